@@ -0,0 +1,79 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of BitInputStream.readBits and BitOutputStream.writeBits at
+ * several field widths. The bytes counter is the number of bytes read or
+ * written.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitIoBenchmark {
+    /** the number of bits in each read or write */
+    @Param({"1", "8", "13", "32"})
+    public int width;
+
+    private byte[] data;
+
+    /**
+     * Generates the input
+     *
+     * @throws IOException never, the input is synthetic
+     */
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load("random");
+    }
+
+    /**
+     * Reads the whole input width bits at a time
+     *
+     * @param bytes the throughput counter
+     * @return a sum of the fields, so the reads are not optimized away
+     */
+    @Benchmark
+    public long readBits(Corpus.Bytes bytes) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(data));
+        long sum = 0;
+        long fields = 8L * data.length / width;
+        for (long i = 0; i < fields; i++) {
+            sum += in.readBits(width);
+        }
+        bytes.bytes += data.length;
+        return sum;
+    }
+
+    /**
+     * Writes one width-bit field per input byte
+     *
+     * @param bytes the throughput counter
+     */
+    @Benchmark
+    public void writeBits(Corpus.Bytes bytes) {
+        BitOutputStream out = new BitOutputStream(Corpus.sink());
+        for (byte b : data) {
+            out.writeBits(b, width);
+        }
+        out.close();
+        bytes.bytes += (long) data.length * width / 8;
+    }
+}
@@ -0,0 +1,89 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The inputs the benchmarks run over: the sample files in files/ (or the
+ * directory named by the grin.corpus system property) and synthetic data.
+ */
+public final class Corpus {
+    // size of the synthetic inputs
+    private static final int SYNTHETIC_SIZE = 4 << 20;
+
+    /**
+     * Prevents instantiation
+     */
+    private Corpus() {
+    }
+
+    /**
+     * Loads or generates an input
+     *
+     * @param name a file in the corpus directory, or skewed (geometrically
+     *             distributed bytes), uniform (every byte value in turn) or
+     *             random
+     * @return the bytes of the input
+     * @throws IOException if the file cannot be read
+     */
+    static byte[] load(String name) throws IOException {
+        Random random = new Random(1846);
+        byte[] data = new byte[SYNTHETIC_SIZE];
+        switch (name) {
+            case "skewed":
+                for (int i = 0; i < data.length; i++) {
+                    // each value is half as likely as the one before it
+                    data[i] = (byte) Math.min(255,
+                            Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE));
+                }
+                return data;
+            case "uniform":
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = (byte) i;
+                }
+                return data;
+            case "random":
+                random.nextBytes(data);
+                return data;
+            default:
+                return Files.readAllBytes(Paths.get(System.getProperty("grin.corpus", "files"),
+                        name));
+        }
+    }
+
+    /**
+     * @return a new output stream that throws its bytes away, so that
+     *         benchmarks do not measure the file system
+     */
+    static OutputStream sink() {
+        return OutputStream.nullOutputStream();
+    }
+
+    /**
+     * Counts the input bytes each benchmark processes. JMH reports the
+     * count as a rate next to the operation rate; divide by 10^6 for MB/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        /** the bytes processed so far */
+        public long bytes;
+
+        /**
+         * Clears the count before each iteration
+         */
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+        }
+    }
+}
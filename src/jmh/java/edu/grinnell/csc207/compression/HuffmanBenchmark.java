@@ -0,0 +1,233 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of each stage of the original single-stream format: counting,
+ * building the tree, writing and reading it, encoding and decoding. Data
+ * stays in memory and output is thrown away, so only the codec is measured;
+ * createFrequencyMap alone reads a file, as it does in Grin. The bytes
+ * counter is the number of uncompressed bytes processed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HuffmanBenchmark {
+    /** the input, see Corpus.load */
+    @Param({"pg2600.txt", "wikipedia-huffman-coding.txt", "skewed", "uniform", "random"})
+    public String input;
+
+    private byte[] data;
+    private Path file;
+    private Histogram histogram;
+    private HuffmanTree tree;
+    private byte[] header;      // magic number and serialized tree
+    private byte[] encoded;     // the whole .grin file
+    private byte[] buffer;      // reused output of decodeIntoBuffer
+    private byte[] order1;      // the input as an order-1 block payload
+    private byte[] decoded;     // reused output of decodeOrder1
+
+    /**
+     * Loads the input and prepares what each stage starts from
+     *
+     * @throws IOException if the input cannot be read or the temporary
+     *                     file cannot be written
+     */
+    @Setup
+    public void setup() throws IOException {
+        data = Corpus.load(input);
+        file = Files.createTempFile("grin-bench", ".bin");
+        Files.write(file, data);
+        histogram = new Histogram();
+        histogram.add(data, 0, data.length);
+        tree = new HuffmanTree(histogram);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        out.writeBits(BlockFormat.GRIN_MAGIC, 32);
+        tree.serialize(out);
+        out.close();
+        header = bytes.toByteArray();
+
+        bytes = new ByteArrayOutputStream();
+        tree.encode(new BitInputStream(ByteBuffer.wrap(data)), new BitOutputStream(bytes));
+        encoded = bytes.toByteArray();
+        buffer = new byte[1 << 16];
+
+        bytes = new ByteArrayOutputStream();
+        out = new BitOutputStream(bytes);
+        ContextModel model = ContextModel.build(data, 0, data.length, 0);
+        model.write(out);
+        model.encodeBytes(data, 0, data.length, out);
+        out.close();
+        order1 = bytes.toByteArray();
+        decoded = new byte[data.length];
+    }
+
+    /**
+     * Deletes the temporary file
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * @param bytes the throughput counter
+     * @return the byte counts of the input
+     */
+    @Benchmark
+    public Histogram histogram(Corpus.Bytes bytes) {
+        Histogram counts = new Histogram();
+        counts.add(data, 0, data.length);
+        bytes.bytes += data.length;
+        return counts;
+    }
+
+    /**
+     * @param bytes the throughput counter
+     * @return the frequency map of the input file
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public Map<Short, Integer> createFrequencyMap(Corpus.Bytes bytes) throws IOException {
+        bytes.bytes += data.length;
+        return Grin.createFrequencyMap(file.toString());
+    }
+
+    /**
+     * @return a tree built from the counts of the input
+     */
+    @Benchmark
+    public HuffmanTree buildTree() {
+        return new HuffmanTree(histogram);
+    }
+
+    /**
+     * Writes the tree as it is stored in a .grin file
+     */
+    @Benchmark
+    public void serialize() {
+        BitOutputStream out = new BitOutputStream(Corpus.sink());
+        tree.serialize(out);
+        out.close();
+    }
+
+    /**
+     * @return the tree read back from a .grin header
+     */
+    @Benchmark
+    public HuffmanTree deserialize() {
+        return new HuffmanTree(new BitInputStream(ByteBuffer.wrap(header)));
+    }
+
+    /**
+     * Encodes the input with a prebuilt tree, header included
+     *
+     * @param bytes the throughput counter
+     */
+    @Benchmark
+    public void encode(Corpus.Bytes bytes) {
+        tree.encode(new BitInputStream(ByteBuffer.wrap(data)),
+                new BitOutputStream(Corpus.sink()));
+        bytes.bytes += data.length;
+    }
+
+    /**
+     * Decodes the encoded input, reading its tree first
+     *
+     * @param bytes the throughput counter
+     */
+    @Benchmark
+    public void decode(Corpus.Bytes bytes) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(encoded));
+        new HuffmanTree(in).decode(in, new BitOutputStream(Corpus.sink()));
+        bytes.bytes += data.length;
+    }
+
+    /**
+     * Decodes the encoded input into a reused buffer. Run with -prof gc:
+     * gc.alloc.rate.norm stays the same whatever the size of the input,
+     * because the only allocations are the stream and the tree, once per
+     * file, and none per symbol.
+     *
+     * @param bytes the throughput counter
+     * @return the number of bytes decoded
+     */
+    @Benchmark
+    public long decodeIntoBuffer(Corpus.Bytes bytes) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(encoded));
+        HuffmanTree decoder = new HuffmanTree(in);
+        long total = 0;
+        int len = decoder.decodeUntilEof(in, buffer, 0, buffer.length);
+        while (len > 0) {
+            total += len;
+            len = len < buffer.length ? 0 : decoder.decodeUntilEof(in, buffer, 0, buffer.length);
+        }
+        bytes.bytes += total;
+        return total;
+    }
+
+    /**
+     * Decodes the encoded input into a reused buffer with RecursiveDecoder,
+     * walking the tree one bit at a time. Compare with decodeIntoBuffer for
+     * what the decode table saves.
+     *
+     * @param bytes the throughput counter
+     * @return the number of bytes decoded
+     */
+    @Benchmark
+    public long decodeRecursive(Corpus.Bytes bytes) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(encoded));
+        in.skipBits(32);
+        RecursiveDecoder decoder = new RecursiveDecoder(in);
+        long total = 0;
+        int len = decoder.decodeUntilEof(in, buffer);
+        while (len > 0) {
+            total += len;
+            len = len < buffer.length ? 0 : decoder.decodeUntilEof(in, buffer);
+        }
+        bytes.bytes += total;
+        return total;
+    }
+
+    /**
+     * Decodes the input coded with an order-1 ContextModel, reading its
+     * header first. Compare with decodeIntoBuffer for the cost of
+     * switching tables on every byte.
+     *
+     * @param bytes the throughput counter
+     * @return the decoded input
+     */
+    @Benchmark
+    public byte[] decodeOrder1(Corpus.Bytes bytes) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(order1));
+        ContextModel.read(in).decodeBytes(in, decoded, 0, decoded.length);
+        bytes.bytes += decoded.length;
+        return decoded;
+    }
+}
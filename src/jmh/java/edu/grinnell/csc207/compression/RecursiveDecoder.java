@@ -0,0 +1,77 @@
+package edu.grinnell.csc207.compression;
+
+/**
+ * The decoder HuffmanTree replaced, kept as a baseline for its decode
+ * table: a tree of node objects, read and walked recursively one bit at a
+ * time. It reads the single-stream format after the magic number.
+ */
+final class RecursiveDecoder {
+    private static final int EOF = 256;
+
+    /** A leaf when its children are null */
+    private static final class Node {
+        private final int symbol;
+        private final Node left;
+        private final Node right;
+
+        Node(int symbol, Node left, Node right) {
+            this.symbol = symbol;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private final Node root;
+
+    /**
+     * Reads the serialized tree
+     *
+     * @param in the stream positioned after the magic number
+     */
+    RecursiveDecoder(BitInputStream in) {
+        root = read(in);
+    }
+
+    /**
+     * @param in the stream positioned at a serialized subtree
+     * @return the subtree
+     */
+    private static Node read(BitInputStream in) {
+        if (in.readBit() == 1) {
+            Node left = read(in);
+            return new Node(-1, left, read(in));
+        }
+        return new Node(in.readBits(9), null, null);
+    }
+
+    /**
+     * @param in   the stream positioned at a code
+     * @param node the node the code has reached
+     * @return the symbol at the leaf the code ends at
+     */
+    private static int walk(BitInputStream in, Node node) {
+        if (node.left == null) {
+            return node.symbol;
+        }
+        return walk(in, in.readBit() == 0 ? node.left : node.right);
+    }
+
+    /**
+     * Decodes symbols into dst until it is full or EOF is read, as
+     * HuffmanTree.decodeUntilEof does
+     *
+     * @param in  the stream positioned at the codes
+     * @param dst the array decoded bytes are stored in
+     * @return the number of bytes decoded
+     */
+    int decodeUntilEof(BitInputStream in, byte[] dst) {
+        for (int i = 0; i < dst.length; i++) {
+            int symbol = walk(in, root);
+            if (symbol == EOF) {
+                return i;
+            }
+            dst[i] = (byte) symbol;
+        }
+        return dst.length;
+    }
+}
@@ -0,0 +1,279 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.Arrays;
+
+/**
+ * An adaptive Huffman code (the FGK algorithm). The encoder and the decoder
+ * both start from the same tiny tree and update it identically after every
+ * symbol, so no tree is stored and the input is coded in a single pass.
+ *
+ * Bytes not seen yet are sent as the ESCAPE code followed by the 8-bit
+ * byte, and the END code marks the end of the stream. The tree is kept in
+ * an array ordered by weight, heaviest first, where the two children of a
+ * node are always next to each other; this is the sibling property that
+ * makes every update a walk from a leaf to the root.
+ */
+public class AdaptiveHuffman {
+    private static final int END = 256;
+    private static final int ESCAPE = 257;
+    private static final int MAX_NODES = 2 * (ESCAPE + 1) - 1;
+    private static final int ROOT = 0;
+
+    private long[] weight;
+    private int[] parent;
+    private int[] child;    // the left child of a node, or ~symbol for a leaf
+    private int[] leaf;     // the node of each symbol, or -1 if not seen yet
+    private int nextFree;   // the first unused node
+    private int[] path;     // scratch space for the bits of a code
+
+    /**
+     * Constructs the starting tree, which holds only END and ESCAPE
+     */
+    public AdaptiveHuffman() {
+        weight = new long[MAX_NODES];
+        parent = new int[MAX_NODES];
+        child = new int[MAX_NODES];
+        leaf = new int[ESCAPE + 1];
+        path = new int[MAX_NODES];
+        Arrays.fill(leaf, -1);
+
+        weight[ROOT] = 2;
+        parent[ROOT] = -1;
+        child[ROOT] = 1;
+        for (int node = 1; node <= 2; node++) {
+            int symbol = node == 1 ? END : ESCAPE;
+            weight[node] = 1;
+            parent[node] = ROOT;
+            child[node] = ~symbol;
+            leaf[symbol] = node;
+        }
+        nextFree = 3;
+    }
+
+    /**
+     * Writes the code for one symbol and updates the tree
+     *
+     * @param symbol the symbol to encode, a byte or 256 for the end
+     * @param out    the stream to write the code to
+     */
+    public void encodeSymbol(int symbol, BitOutputStream out) {
+        if (leaf[symbol] == -1) {
+            writeCode(leaf[ESCAPE], out);
+            out.writeBits(symbol, 8);
+            addSymbol(symbol);
+        } else {
+            writeCode(leaf[symbol], out);
+        }
+        update(symbol);
+    }
+
+    /**
+     * Writes the codes for the bytes data[off] through data[off + len - 1]
+     *
+     * @param data the bytes to encode
+     * @param off  the index of the first byte to encode
+     * @param len  the number of bytes to encode
+     * @param out  the stream to write the codes to
+     */
+    public void encodeBytes(byte[] data, int off, int len, BitOutputStream out) {
+        for (int i = off; i < off + len; i++) {
+            encodeSymbol(data[i] & 0xff, out);
+        }
+    }
+
+    /**
+     * Writes the path from the root to a node, one bit per level
+     *
+     * @param node the node to write the code of
+     * @param out  the stream to write the code to
+     */
+    private void writeCode(int node, BitOutputStream out) {
+        int n = 0;
+        while (node != ROOT) {
+            path[n++] = node - child[parent[node]];
+            node = parent[node];
+        }
+        while (n > 0) {
+            int bits = 0;
+            int chunk = Math.min(n, 32);
+            for (int i = 0; i < chunk; i++) {
+                bits = (bits << 1) | path[--n];
+            }
+            out.writeBits(bits, chunk);
+        }
+    }
+
+    /**
+     * Reads one code and updates the tree
+     *
+     * @param in the stream to read the code from
+     * @return the decoded symbol, a byte or 256 for the end
+     * @throws IllegalArgumentException if the input ends inside a code
+     */
+    public int decodeSymbol(BitInputStream in) {
+        int node = ROOT;
+        while (child[node] >= 0) {
+            int bit = in.readBit();
+            if (bit == -1) {
+                throw new IllegalArgumentException("Truncated adaptive Huffman code");
+            }
+            node = child[node] + bit;
+        }
+        int symbol = ~child[node];
+        if (symbol == ESCAPE) {
+            symbol = in.readBits(8);
+            if (symbol == -1) {
+                throw new IllegalArgumentException("Truncated adaptive Huffman code");
+            }
+            addSymbol(symbol);
+        }
+        update(symbol);
+        return symbol;
+    }
+
+    /**
+     * Decodes symbols into dst[off] through dst[off + len - 1] until either
+     * len bytes are decoded or the END code is read.
+     *
+     * @param in  the stream that stores the codes
+     * @param dst the array decoded bytes are stored in
+     * @param off the index of the first decoded byte
+     * @param len the most bytes to decode
+     * @return the number of bytes decoded, less than len only if END was
+     *         read
+     */
+    public int decodeUntilEof(BitInputStream in, byte[] dst, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            int symbol = decodeSymbol(in);
+            if (symbol == END) {
+                return i - off;
+            }
+            dst[i] = (byte) symbol;
+        }
+        return len;
+    }
+
+    /**
+     * Splits the lightest leaf into itself and a new leaf of weight 0 for
+     * symbol. The lightest node is always the last one, so the order of
+     * the array is kept.
+     *
+     * @param symbol the symbol seen for the first time
+     */
+    private void addSymbol(int symbol) {
+        int lightest = nextFree - 1;
+        int copy = nextFree;
+        int added = nextFree + 1;
+        nextFree += 2;
+
+        weight[copy] = weight[lightest];
+        child[copy] = child[lightest];
+        parent[copy] = lightest;
+        leaf[~child[copy]] = copy;
+
+        weight[added] = 0;
+        child[added] = ~symbol;
+        parent[added] = lightest;
+        leaf[symbol] = added;
+
+        child[lightest] = copy;
+    }
+
+    /**
+     * Adds one to the weight of a symbol and of every node above it. Before
+     * a node's weight goes up, it is swapped with the first node of the
+     * same weight, so the array stays ordered by weight.
+     *
+     * @param symbol the symbol that was just coded
+     */
+    private void update(int symbol) {
+        int node = leaf[symbol];
+        while (node != ROOT) {
+            weight[node]++;
+            int first = node;
+            while (first > ROOT && weight[first - 1] < weight[node]) {
+                first--;
+            }
+            if (first != node) {
+                swap(node, first);
+                node = first;
+            }
+            node = parent[node];
+        }
+        weight[ROOT]++;
+    }
+
+    /**
+     * Exchanges the subtrees at two places in the array. Each place keeps
+     * its parent, so the subtrees trade parents.
+     *
+     * @param a one node
+     * @param b the other node
+     */
+    private void swap(int a, int b) {
+        long w = weight[a];
+        weight[a] = weight[b];
+        weight[b] = w;
+        int c = child[a];
+        child[a] = child[b];
+        child[b] = c;
+        adopt(a);
+        adopt(b);
+    }
+
+    /**
+     * Points the children of a node, or the leaf table for a leaf, back at
+     * the node after it moved
+     *
+     * @param node the node that moved
+     */
+    private void adopt(int node) {
+        if (child[node] < 0) {
+            leaf[~child[node]] = node;
+        } else {
+            parent[child[node]] = node;
+            parent[child[node] + 1] = node;
+        }
+    }
+
+    /**
+     * Encodes the rest of a stream in one pass, writing the magic number,
+     * the codes and the END code
+     *
+     * @param in  the stream to encode, at a byte boundary
+     * @param out the stream to write to
+     */
+    public void encode(BitInputStream in, BitOutputStream out) {
+        out.writeBits(BlockFormat.ADAPTIVE_MAGIC, 32);
+        byte[] chunk = new byte[1 << 16];
+        int len = in.readBytes(chunk, 0, chunk.length);
+        while (len > 0) {
+            encodeBytes(chunk, 0, len, out);
+            len = in.readBytes(chunk, 0, chunk.length);
+        }
+        encodeSymbol(END, out);
+        in.close();
+        out.close();
+    }
+
+    /**
+     * Decodes a stream written by encode
+     *
+     * @param in  the stream to decode, starting at the magic number
+     * @param out the stream to write the decoded bytes to
+     * @throws IllegalArgumentException if in is not an adaptive stream
+     */
+    public void decode(BitInputStream in, BitOutputStream out) {
+        if (in.readBits(32) != BlockFormat.ADAPTIVE_MAGIC) {
+            throw new IllegalArgumentException("Input file must be an adaptive Grin file");
+        }
+        byte[] chunk = new byte[1 << 16];
+        int len = decodeUntilEof(in, chunk, 0, chunk.length);
+        while (len > 0) {
+            out.writeBytes(chunk, 0, len);
+            len = len < chunk.length ? 0 : decodeUntilEof(in, chunk, 0, chunk.length);
+        }
+        in.close();
+        out.close();
+    }
+}
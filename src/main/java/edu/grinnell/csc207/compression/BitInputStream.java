@@ -1,29 +1,103 @@
 package edu.grinnell.csc207.compression;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A BitInputStream reads a file bit-by-bit.
  */
 public class BitInputStream {
-    private FileInputStream input;
-    private int digits;     // next set of digits (buffer)
-    private int cursor;     // how many digits from buffer have been used
+    private ReadableByteChannel input; // null when reading a fixed buffer
+    private ByteBuffer buffer;  // bytes read from input but not yet used
+    private long bits;          // accumulator, next bit is bit count - 1
+    private int count;          // how many bits of the accumulator are valid
 
-    private static final int BYTE_SIZE = 8;  // digits per byte
+    private boolean mapped;     // true when buffer is a window of input
+    private long mapPosition;   // file position just past the current window
+    private long window;        // the most bytes mapped at once
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** the most bytes of a file mapped at once, well under the 2 GB limit */
+    static final long MAP_WINDOW = 1L << 30;
 
     /**
      * Constructs a new BitInputStream attached to the given file
      * @param file the file to open
      */
     public BitInputStream(String file) throws IOException {
-        input = new FileInputStream(file);
-        nextByte();
+        this(FileChannel.open(Paths.get(file), StandardOpenOption.READ));
+    }
+
+    /**
+     * Constructs a new BitInputStream reading from the given stream
+     * @param in the stream to read
+     */
+    public BitInputStream(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /**
+     * Constructs a new BitInputStream reading from the given channel
+     * @param in the channel to read
+     */
+    public BitInputStream(ReadableByteChannel in) {
+        input = in;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Constructs a new BitInputStream reading the remaining bytes of the
+     * given buffer. The buffer is read in place, not copied.
+     * @param in the buffer to read
+     */
+    public BitInputStream(ByteBuffer in) {
+        input = null;
+        buffer = in;
+    }
+
+    /**
+     * Opens a BitInputStream that reads the given file through memory
+     * mappings instead of read calls. The file is mapped one window at a
+     * time, so files of any size can be read.
+     * @param file the file to open
+     * @return the stream
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static BitInputStream map(String file) throws IOException {
+        return map(file, MAP_WINDOW);
+    }
+
+    /**
+     * Opens a BitInputStream that reads the given file through memory
+     * mappings of at most window bytes each
+     * @param file   the file to open
+     * @param window the most bytes mapped at once
+     * @return the stream
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    static BitInputStream map(String file, long window) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        BitInputStream in = new BitInputStream(channel);
+        in.mapped = true;
+        in.window = window;
+        in.buffer = ByteBuffer.allocate(0);
+        return in;
     }
 
     /** @return true iff the stream has bits left to produce */
-    public boolean hasBits() { 
-        return digits != -1; 
+    public boolean hasBits() {
+        if (count == 0) {
+            refill();
+        }
+        return count > 0;
     }
 
     /**
@@ -32,16 +106,7 @@ public class BitInputStream {
      *         of data
      **/
     public int readBit() {
-        // if at eof, return -1
-        if (digits == -1) { 
-            return -1; 
-        }
-        int result = (digits & (1 << cursor)) >> cursor;
-        cursor--;
-        if (cursor < 0) { 
-            nextByte(); 
-        }
-        return result;
+        return readBits(1);
     }
 
     /**
@@ -51,29 +116,144 @@ public class BitInputStream {
      *         if the stream runs out of data
      */
     public int readBits(int n) {
-        int ret = 0;
-        for (int i = n - 1; i >= 0; i--) {
-            int bit = readBit();
-            if (bit == -1) { 
-                return -1; 
+        if (count < n) {
+            refill();
+            if (count < n) {
+                count = 0;
+                return -1;
+            }
+        }
+        count -= n;
+        return (int) ((bits >>> count) & ((1L << n) - 1));
+    }
+
+    /**
+     * Returns the next n bits in big-endian order (msb first) without
+     * consuming them. If the stream has fewer than n bits left, the missing
+     * low-order bits are filled with 0s.
+     * @param n the number of bits to look at (0--32)
+     * @return the next n bits of the stream packed in a single integer
+     */
+    public int peekBits(int n) {
+        if (count < n) {
+            refill();
+            if (count < n) {
+                return (int) ((bits << (n - count)) & ((1L << n) - 1));
             }
-            ret = ret | (bit << i);
         }
-        return ret;
+        return (int) ((bits >>> (count - n)) & ((1L << n) - 1));
     }
 
-    /** Refreshes the internal buffer with the next BYTE_SIZE bits. */
-    private void nextByte() {
+    /**
+     * Consumes n bits from the stream, typically after looking at them with
+     * peekBits. A decoder that peeked past the end of the stream learns
+     * here that the code it looked up was cut off.
+     * @param n the number of bits to skip
+     * @throws IllegalArgumentException if the stream has fewer than n bits
+     *                                  left
+     */
+    public void skipBits(int n) {
+        while (n > count) {
+            n -= count;
+            count = 0;
+            refill();
+            if (count == 0) {
+                throw new IllegalArgumentException("Unexpected end of input");
+            }
+        }
+        count -= n;
+    }
+
+    /**
+     * Reads up to len whole bytes into dst. The stream must be at a byte
+     * boundary, which is the case when every read so far was a multiple of
+     * 8 bits.
+     * @param dst the array to store the bytes in
+     * @param off the index of the first byte to store
+     * @param len the number of bytes to read
+     * @return the number of bytes read, less than len only at end of stream
+     */
+    public int readBytes(byte[] dst, int off, int len) {
+        if (count % 8 != 0) {
+            throw new IllegalStateException("Stream is not at a byte boundary");
+        }
+        int done = 0;
+        while (count > 0 && done < len) {
+            count -= 8;
+            dst[off + done++] = (byte) (bits >>> count);
+        }
+        while (done < len && (buffer.hasRemaining() || nextBuffer())) {
+            int n = Math.min(len - done, buffer.remaining());
+            buffer.get(dst, off + done, n);
+            done += n;
+        }
+        return done;
+    }
+
+    /**
+     * Tops up the accumulator with whole bytes from the buffer, refilling
+     * the buffer from the input when it runs dry.
+     */
+    private void refill() {
+        if (count <= 32 && buffer.remaining() >= 4) {
+            bits = (bits << 32) | (buffer.getInt() & 0xffffffffL);
+            count += 32;
+        }
+        while (count <= 56) {
+            if (!buffer.hasRemaining() && !nextBuffer()) {
+                return;
+            }
+            bits = (bits << 8) | (buffer.get() & 0xff);
+            count += 8;
+        }
+    }
+
+    /**
+     * Refreshes the internal buffer with the next block of the input.
+     * @return true iff the buffer has bytes left to use
+     */
+    private boolean nextBuffer() {
+        if (input == null) {
+            return false;
+        }
         try {
-            digits = input.read();
+            if (mapped) {
+                return nextWindow();
+            }
+            buffer.compact();
+            int read = 0;
+            while (read == 0) {
+                read = input.read(buffer);
+            }
+            buffer.flip();
         } catch (IOException e) {
             throw new RuntimeException(e.toString());
         }
-        cursor = BYTE_SIZE - 1;
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Maps the next window of the file. Only called once the current
+     * window is used up.
+     * @return true iff the file had bytes left to map
+     * @throws IOException if the file cannot be mapped
+     */
+    private boolean nextWindow() throws IOException {
+        FileChannel file = (FileChannel) input;
+        long size = Math.min(window, file.size() - mapPosition);
+        if (size <= 0) {
+            return false;
+        }
+        buffer = file.map(FileChannel.MapMode.READ_ONLY, mapPosition, size);
+        mapPosition += size;
+        return true;
     }
 
     /** Closes the stream, flushing any remaining bits to the file. */
     public void close() {
+        if (input == null) {
+            return;
+        }
         try {
             input.close();
         } catch (IOException e) {
@@ -1,39 +1,83 @@
 package edu.grinnell.csc207.compression;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A BitOutputStream allows bit-by-bit writing to a file.
  */
 public class BitOutputStream {
-    private PrintStream output;
-    private int digits;     // a buffer used to build up next set of digits
-    private int cursor;     // our current position in the buffer.
-    private boolean debug;  // set to true to write ASCII 0s and 1s rather than
-                            // bits
+    private WritableByteChannel output;
+    private ByteBuffer buffer;  // whole bytes waiting to be written out
+    private long bits;          // accumulator, holds count pending bits
+    private int count;          // how many bits of the accumulator are valid
 
-    private static final int BYTE_SIZE = 8; // digits per byte
+    private boolean mapped;     // true when buffer is a window of output
+    private long mapPosition;   // file position of the start of the window
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the first window mapped; each later window doubles, up to MAP_WINDOW
+    private static final int FIRST_WINDOW = 1 << 20;
 
     /**
      * Constructs a new BitOutputStream attached to the given file.
      * @param file the file to write to
-     * @param debug true iff you want to output the bits as ASCII 0s and 1s
-     * @throws FileNotFoundException if the file is not found
+     * @throws IOException if the file cannot be opened
      */
-    public BitOutputStream(String file, boolean debug) throws IOException {
-        this.output = new PrintStream(file);
-        this.debug = debug;
-        digits = 0;
-        cursor = BYTE_SIZE - 1;
+    public BitOutputStream(String file) throws IOException {
+        this(FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
     }
 
     /**
-     * Constructs a new BitOutputStream attached to the given file.
+     * Constructs a new BitOutputStream writing to the given stream.
+     * @param out the stream to write to
+     */
+    public BitOutputStream(OutputStream out) {
+        this(Channels.newChannel(out));
+    }
+
+    /**
+     * Constructs a new BitOutputStream writing to the given channel.
+     * @param out the channel to write to
+     */
+    public BitOutputStream(WritableByteChannel out) {
+        output = out;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a BitOutputStream that writes the given file through memory
+     * mappings instead of write calls. Windows past the end of the file
+     * grow it as they are mapped, and the file is cut back to the bytes
+     * actually written when the stream is closed.
      * @param file the file to write to
-     * @throws FileNotFoundException if the file is not found
+     * @return the stream
+     * @throws IOException if the file cannot be opened or mapped
      */
-    public BitOutputStream(String file) throws IOException {
-        this(file, false);
+    public static BitOutputStream map(String file) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        BitOutputStream out = new BitOutputStream();
+        out.output = channel;
+        out.mapped = true;
+        out.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FIRST_WINDOW);
+        return out;
+    }
+
+    /**
+     * Constructs a BitOutputStream with no destination, for decorators that
+     * override every write.
+     */
+    protected BitOutputStream() {
     }
 
     /**
@@ -43,48 +87,140 @@ public class BitOutputStream {
     public void writeBit(int bit) {
         if (bit < 0 || bit > 1) {
             throw new IllegalArgumentException("Illegal bit: " + bit);
-        } else if (debug) {
-            output.print(bit);
-        } else {
-            digits += bit << cursor;
-            cursor--;
-            if (cursor < 0) {
-                flush();
-            }
         }
+        writeBits(bit, 1);
     }
 
     /**
      * Writes the lower n bits to the stream in big-endian style.
      * @param bits the bits to write as an integer
-     * @param n the number of bits to write from the integer
+     * @param n the number of bits to write from the integer (0--32)
      */
     public void writeBits(int bits, int n) {
-        for (int i = n - 1; i >= 0; i--) {
-            writeBit((bits >>> i) % 2);
+        this.bits = (this.bits << n) | (bits & ((1L << n) - 1));
+        count += n;
+        if (count >= 32) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            count -= 32;
+            buffer.putInt((int) (this.bits >>> count));
         }
     }
 
     /**
-     * Flushes the buffer. If numDigits < BYTE_SIZE, flush will pad the output
-     * with extra 0s in the least-significant bits so that a full byte is
-     * written to the file.
+     * Writes len whole bytes from src. The stream must be at a byte boundary,
+     * which is the case when every write so far was a multiple of 8 bits.
+     * @param src the array holding the bytes
+     * @param off the index of the first byte to write
+     * @param len the number of bytes to write
      */
-    private void flush() {
-        if (cursor == BYTE_SIZE - 1) {
+    public void writeBytes(byte[] src, int off, int len) {
+        if (count % 8 != 0) {
+            throw new IllegalStateException("Stream is not at a byte boundary");
+        }
+        if (buffer.remaining() < 4 + len) {
+            drain();
+        }
+        while (count > 0) {
+            count -= 8;
+            buffer.put((byte) (this.bits >>> count));
+        }
+        if (len > buffer.remaining()) {
+            drain();
+            write(ByteBuffer.wrap(src, off, len));
+        } else {
+            buffer.put(src, off, len);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the output.
+     */
+    private void drain() {
+        if (mapped) {
+            nextWindow();
             return;
         }
-        output.write(digits);
-        digits = 0;
-        cursor = BYTE_SIZE - 1;
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all remaining bytes of src to the output.
+     * @param src the bytes to write
+     */
+    private void write(ByteBuffer src) {
+        while (mapped && src.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                nextWindow();
+            }
+            ByteBuffer part = src.slice();
+            part.limit(Math.min(part.remaining(), buffer.remaining()));
+            buffer.put(part);
+            src.position(src.position() + part.limit());
+        }
+        try {
+            while (src.hasRemaining()) {
+                output.write(src);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    /**
+     * Maps the window that starts where the current one is filled up to.
+     */
+    private void nextWindow() {
+        mapPosition += buffer.position();
+        long size = Math.min(BitInputStream.MAP_WINDOW, 2L * buffer.capacity());
+        try {
+            buffer = ((FileChannel) output).map(FileChannel.MapMode.READ_WRITE,
+                    mapPosition, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    /**
+     * Flushes the buffer, writing everything written so far to the output.
+     * If the pending bits do not fill a byte, flush will pad the output with
+     * extra 0s in the least-significant bits so that a full byte is written
+     * to the file.
+     */
+    public void flush() {
+        if (count % 8 != 0) {
+            writeBits(0, 8 - count % 8);
+        }
+        if (buffer.remaining() < 4) {
+            drain();
+        }
+        while (count > 0) {
+            count -= 8;
+            buffer.put((byte) (this.bits >>> count));
+        }
+        if (!mapped) {
+            drain();
+        }
     }
 
     /** Closes the stream, flushing any remaining bits to the file */
     public void close() {
-        if (cursor >= 0) {
-            flush();
+        if (output == null) {
+            return;
+        }
+        flush();
+        try {
+            if (mapped) {
+                ((FileChannel) output).truncate(mapPosition + buffer.position());
+            }
+            output.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
         }
-        output.close();
+        output = null;
     }
 
     protected void finalize() {
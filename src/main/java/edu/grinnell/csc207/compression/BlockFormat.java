@@ -0,0 +1,387 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The block container format. A block .grin file splits its input into
+ * fixed-size blocks that are coded independently, so blocks can be
+ * compressed and decompressed on separate threads.
+ *
+ * The layout, with all integers big-endian, is:
+ * <pre>
+ *   magic (32 bits, BLOCK_MAGIC)   block size (32 bits)
+ *   block*                         type (8), length (32), payload length (32), payload
+ *   END (8 bits)
+ *   index                          block count (32), then per block:
+ *                                  length (32), stored size (32)
+ *   index position (64 bits)       magic (32 bits, BLOCK_MAGIC)
+ * </pre>
+ * A block's length is the number of bytes it decodes to, and its stored
+ * size counts its header and payload. The index and the trailer after it
+ * let a reader find any block without scanning the blocks before it.
+ *
+ * The type of a block says how its payload is coded, so new codings are
+ * added as new types; a reader rejects a file holding a type it does not
+ * know.
+ */
+public class BlockFormat {
+    /** the magic number of the original single-stream format */
+    public static final int GRIN_MAGIC = 1846;
+
+    /** the magic number of the block container format */
+    public static final int BLOCK_MAGIC = 1847;
+
+    /** the magic number of the one-pass adaptive Huffman format */
+    public static final int ADAPTIVE_MAGIC = 1848;
+
+    /** the magic number of a trained model file */
+    public static final int MODEL_MAGIC = 1849;
+
+    /** the magic number of a record coded with a trained model */
+    public static final int MODEL_REF_MAGIC = 1850;
+
+    /**
+     * the magic number of the single-stream format with canonical code
+     * lengths in place of the serialized tree
+     */
+    public static final int CANONICAL_MAGIC = 1851;
+
+    /** a block holding a serialized HuffmanTree followed by the codes */
+    public static final int TYPE_HUFFMAN = 0;
+
+    /** a block holding canonical code lengths followed by the codes */
+    public static final int TYPE_CANONICAL = 1;
+
+    /** a block holding an order-1 ContextModel followed by the codes */
+    public static final int TYPE_ORDER1 = 2;
+
+    /** a block holding its bytes as they are, because coding would not pay */
+    public static final int TYPE_STORED = 3;
+
+    /** a block holding run-length symbols coded with canonical codes */
+    public static final int TYPE_RLE = 4;
+
+    /** a block holding LZ77 matches coded with two canonical codes */
+    public static final int TYPE_LZ77 = 5;
+
+    /** the marker that follows the last block */
+    public static final int TYPE_END = 0xff;
+
+    /**
+     * the most symbols a code in a block can have: the bytes, EOF (256) and
+     * up to 30 symbols after EOF, which RunLength codes runs with and Lz77
+     * codes match lengths with. The 9-bit symbol count that
+     * HuffmanTree.writeCodeLengths writes must hold it.
+     */
+    public static final int MAX_SYMBOLS = 287;
+
+    /** the bytes in a block header: type, length and payload length */
+    public static final int BLOCK_HEADER_SIZE = 9;
+
+    /** the bytes in the trailer: index position and magic */
+    public static final int TRAILER_SIZE = 12;
+
+    // the options of decodes that report to no listener
+    private static final GrinOptions QUIET = new GrinOptions();
+
+    /**
+     * Prevents instantiation
+     */
+    private BlockFormat() {
+    }
+
+    /**
+     * Encodes one block, header included
+     *
+     * @param data    the bytes of the block
+     * @param len     the number of bytes in data to encode
+     * @param options the options that choose how the block is coded
+     * @return the block as it is stored in the file
+     */
+    public static byte[] encodeBlock(byte[] data, int len, GrinOptions options) {
+        if (options.getLzLevel() > 0) {
+            return encodeLz77(data, len, options);
+        }
+        if (options.getContextOrder() == 1) {
+            // the context trees cost more header than one tree, so the
+            // order-0 block is coded too and the smaller one kept
+            byte[] block = encodeOrder1(data, len, options);
+            byte[] order0 = encodeOrder0(data, len, options);
+            return block != null && block.length < order0.length ? block : order0;
+        }
+        return encodeOrder0(data, len, options);
+    }
+
+    /**
+     * Encodes one block with a single tree, or its runs replaced by
+     * RunLength symbols if the options ask for them, header included. A
+     * block that would not shrink is stored.
+     *
+     * @param data    the bytes of the block
+     * @param len     the number of bytes in data to encode
+     * @param options the options that choose how the block is coded
+     * @return the block as it is stored in the file
+     */
+    private static byte[] encodeOrder0(byte[] data, int len, GrinOptions options) {
+        if (options.isRunLength()) {
+            return encodeRuns(data, len, options);
+        }
+        long time = options.clock();
+        Histogram histogram = new Histogram();
+        histogram.add(data, 0, len);
+        time = options.phase("count", time);
+        HuffmanTree tree;
+        if (options.getMaxCodeLength() > 0) {
+            tree = new HuffmanTree(histogram, options.getMaxCodeLength());
+        } else {
+            tree = new HuffmanTree(histogram);
+        }
+        time = options.phase("build", time);
+        if (codedBits(tree, histogram, options.isCanonical()) >= 8L * len) {
+            return toBlock(TYPE_STORED, len, data, len);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+        BitOutputStream out = new BitOutputStream(bytes);
+        int type;
+        if (options.isCanonical()) {
+            type = TYPE_CANONICAL;
+            tree = tree.toCanonical();
+            tree.writeCodeLengths(out);
+        } else {
+            type = TYPE_HUFFMAN;
+            tree.serialize(out);
+        }
+        time = options.phase("header", time);
+        tree.encodeBytes(data, 0, len, out);
+        out.close();
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(tree.getSymbolCount(), tree.getDepth());
+        }
+
+        byte[] payload = bytes.toByteArray();
+        return toBlock(type, len, payload, payload.length);
+    }
+
+    /**
+     * Estimates from the counts alone how many bits coding some data with
+     * a tree takes, so that data that would not shrink can be stored
+     * without spending time on coding it
+     *
+     * @param tree      the tree the data would be coded with
+     * @param counts    the byte counts of the data
+     * @param canonical true if the tree is stored as code lengths
+     * @return the bits of the header and the codes
+     */
+    public static long codedBits(HuffmanTree tree, Histogram counts, boolean canonical) {
+        long header = canonical ? tree.codeLengthBits() : tree.serializedBits();
+        return header + tree.encodedBits(counts);
+    }
+
+    /**
+     * @param len       the number of bytes in a file
+     * @param blockSize the block size
+     * @return the size of a block file holding the file in stored blocks
+     */
+    public static long storedSize(long len, int blockSize) {
+        long blocks = (len + blockSize - 1) / blockSize;
+        // magic and block size, END, block count, and the trailer
+        return 8 + 1 + 4 + TRAILER_SIZE + blocks * (BLOCK_HEADER_SIZE + 8) + len;
+    }
+
+    /**
+     * Encodes one block with its repeated strings replaced by Lz77 matches,
+     * header included. A block that would not shrink is stored.
+     *
+     * @param data    the bytes of the block
+     * @param len     the number of bytes in data to encode
+     * @param options the options that choose how the block is coded
+     * @return the block as it is stored in the file
+     */
+    private static byte[] encodeLz77(byte[] data, int len, GrinOptions options) {
+        long time = options.clock();
+        Lz77 matches = new Lz77(data, 0, len, options.getLzLevel());
+        time = options.phase("match", time);
+        long[] literalCounts = matches.countLiterals();
+        long[] distanceCounts = matches.countDistances();
+        time = options.phase("count", time);
+        // both codes keep an unused EOF code, see HuffmanTree.ofSymbols
+        HuffmanTree literals = HuffmanTree.ofSymbols(literalCounts, options.getMaxCodeLength());
+        HuffmanTree distances = HuffmanTree.ofSymbols(distanceCounts,
+                options.getMaxCodeLength());
+        time = options.phase("build", time);
+        long bits = literals.codeLengthBits() + literals.encodedBits(literalCounts)
+                + distances.codeLengthBits() + distances.encodedBits(distanceCounts)
+                + Lz77.extraBits(literalCounts, distanceCounts);
+        if (bits >= 8L * len) {
+            return toBlock(TYPE_STORED, len, data, len);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+        BitOutputStream out = new BitOutputStream(bytes);
+        literals.writeCodeLengths(out);
+        distances.writeCodeLengths(out);
+        time = options.phase("header", time);
+        matches.encode(literals, distances, out);
+        out.close();
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(literals.getSymbolCount(), literals.getDepth());
+        }
+        byte[] payload = bytes.toByteArray();
+        return toBlock(TYPE_LZ77, len, payload, payload.length);
+    }
+
+    /**
+     * Encodes one block with its runs replaced by RunLength symbols, header
+     * included. A block that would not shrink is stored.
+     *
+     * @param data    the bytes of the block
+     * @param len     the number of bytes in data to encode
+     * @param options the options that choose how the block is coded
+     * @return the block as it is stored in the file
+     */
+    private static byte[] encodeRuns(byte[] data, int len, GrinOptions options) {
+        long time = options.clock();
+        long[] counts = RunLength.count(data, 0, len);
+        time = options.phase("count", time);
+        HuffmanTree tree = HuffmanTree.ofSymbols(counts, options.getMaxCodeLength());
+        time = options.phase("build", time);
+        if (tree.codeLengthBits() + tree.encodedBits(counts)
+                + RunLength.extraBits(counts) >= 8L * len) {
+            return toBlock(TYPE_STORED, len, data, len);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+        BitOutputStream out = new BitOutputStream(bytes);
+        tree.writeCodeLengths(out);
+        time = options.phase("header", time);
+        RunLength.encode(tree, data, 0, len, out);
+        out.close();
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(tree.getSymbolCount(), tree.getDepth());
+        }
+        byte[] payload = bytes.toByteArray();
+        return toBlock(TYPE_RLE, len, payload, payload.length);
+    }
+
+    /**
+     * Encodes one block with an order-1 ContextModel, header included
+     *
+     * @param data    the bytes of the block
+     * @param len     the number of bytes in data to encode
+     * @param options the options that choose how the block is coded
+     * @return the block as it is stored in the file, or null if no context
+     *         pays for a tree of its own, so that a single tree codes the
+     *         block as well and decodes faster, or if the block would not
+     *         shrink
+     */
+    private static byte[] encodeOrder1(byte[] data, int len, GrinOptions options) {
+        long time = options.clock();
+        ContextModel model = ContextModel.build(data, 0, len, options.getMaxCodeLength());
+        time = options.phase("build", time);
+        if (model.getOwnTrees() == 0) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+        BitOutputStream out = new BitOutputStream(bytes);
+        model.write(out);
+        time = options.phase("header", time);
+        model.encodeBytes(data, 0, len, out);
+        out.close();
+        options.phase("codes", time);
+        byte[] payload = bytes.toByteArray();
+        if (payload.length >= len) {
+            return null;
+        }
+        return toBlock(TYPE_ORDER1, len, payload, payload.length);
+    }
+
+    /**
+     * Prepends the block header to a payload
+     *
+     * @param type    the type of the block
+     * @param len     the number of bytes the block decodes to
+     * @param payload    the coded block
+     * @param payloadLen the number of bytes in payload
+     * @return the block as it is stored in the file
+     */
+    private static byte[] toBlock(int type, int len, byte[] payload, int payloadLen) {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + payloadLen);
+        block.put((byte) type);
+        block.putInt(len);
+        block.putInt(payloadLen);
+        block.put(payload, 0, payloadLen);
+        return block.array();
+    }
+
+    /**
+     * Decodes the payload of one block
+     *
+     * @param type    the type of the block
+     * @param payload the payload of the block
+     * @param dst     the array to decode into, at least as long as the block
+     * @param len     the number of bytes the block decodes to
+     */
+    public static void decodeBlock(int type, byte[] payload, byte[] dst, int len) {
+        decodeBlock(type, payload, dst, len, QUIET);
+    }
+
+    /**
+     * Decodes the payload of one block, reporting its phases to the
+     * listener of the options
+     *
+     * @param type    the type of the block
+     * @param payload the payload of the block
+     * @param dst     the array to decode into, at least as long as the block
+     * @param len     the number of bytes the block decodes to
+     * @param options the options whose listener is told about the block
+     */
+    public static void decodeBlock(int type, byte[] payload, byte[] dst, int len,
+            GrinOptions options) {
+        if (type == TYPE_STORED) {
+            if (payload.length != len) {
+                throw new IllegalArgumentException("Corrupt stored block");
+            }
+            System.arraycopy(payload, 0, dst, 0, len);
+            return;
+        }
+        long time = options.clock();
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(payload));
+        if (type == TYPE_ORDER1) {
+            ContextModel model = ContextModel.read(in);
+            time = options.phase("header", time);
+            model.decodeBytes(in, dst, 0, len);
+            options.phase("codes", time);
+            return;
+        }
+        HuffmanTree tree;
+        if (type == TYPE_HUFFMAN) {
+            tree = HuffmanTree.deserialize(in);
+            time = options.phase("header", time);
+            tree.decodeBytes(in, dst, 0, len);
+        } else if (type == TYPE_CANONICAL) {
+            tree = HuffmanTree.readCodeLengths(in);
+            time = options.phase("header", time);
+            tree.decodeBytes(in, dst, 0, len);
+        } else if (type == TYPE_LZ77) {
+            tree = HuffmanTree.readCodeLengths(in);
+            HuffmanTree distances = HuffmanTree.readCodeLengths(in);
+            time = options.phase("header", time);
+            Lz77.decode(tree, distances, in, dst, 0, len);
+        } else if (type == TYPE_RLE) {
+            tree = HuffmanTree.readCodeLengths(in);
+            time = options.phase("header", time);
+            RunLength.decode(tree, in, dst, 0, len);
+        } else {
+            throw new IllegalArgumentException("Unknown block type: " + type);
+        }
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(tree.getSymbolCount(), tree.getDepth());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A BlockReader reads a block container (see BlockFormat) from front to
+ * back. Blocks ahead of the one being returned are decoded on a pool of
+ * threads. After the last block it checks the index and the trailer
+ * against the blocks it read, so a damaged or cut-off file is rejected
+ * rather than decoded short.
+ */
+public class BlockReader {
+    private BitInputStream in;
+    private int blockSize;
+    private GrinOptions options;        // whose listener is told about each block
+    private ExecutorService pool;       // null when decoding on this thread
+    private Deque<Future<byte[]>> pending;
+    private int maxPending;
+    private boolean atEnd;              // true once the END marker is read
+
+    private long position;              // bytes read so far
+    private List<Integer> lengths;      // decoded length of each block
+    private List<Integer> sizes;        // stored size of each block
+
+    /**
+     * Constructs a BlockReader and reads the container header
+     *
+     * @param in      the stream positioned at the magic number
+     * @param threads the number of threads that decode blocks
+     */
+    public BlockReader(BitInputStream in, int threads) {
+        this(in, threads, new GrinOptions());
+    }
+
+    /**
+     * Constructs a BlockReader that reports the phases of each block, and
+     * reads the container header
+     *
+     * @param in      the stream positioned at the magic number
+     * @param threads the number of threads that decode blocks
+     * @param options the options whose listener is told about each block
+     */
+    public BlockReader(BitInputStream in, int threads, GrinOptions options) {
+        this.in = in;
+        this.options = options;
+        if (in.readBits(32) != BlockFormat.BLOCK_MAGIC) {
+            throw new IllegalArgumentException("Input file must be a Grin block file");
+        }
+        blockSize = in.readBits(32);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Corrupt Grin block file");
+        }
+        if (threads > 1) {
+            pool = BlockWriter.newPool(threads);
+        }
+        pending = new ArrayDeque<>();
+        maxPending = 2 * threads;
+        position = 8;
+        lengths = new ArrayList<>();
+        sizes = new ArrayList<>();
+    }
+
+    /**
+     * @return the number of input bytes in each block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Decodes the next block
+     *
+     * @return the bytes of the next block, or null after the last block
+     */
+    public byte[] nextBlock() {
+        if (pool == null) {
+            return atEnd ? null : readBlock();
+        }
+        while (!atEnd && pending.size() < maxPending) {
+            int type = in.readBits(8);
+            if (type == BlockFormat.TYPE_END) {
+                atEnd = true;
+                readIndex();
+            } else {
+                int len = readLength();
+                byte[] payload = readPayload();
+                pending.add(pool.submit(() -> decode(type, payload, len)));
+            }
+        }
+        return pending.isEmpty() ? null : BlockWriter.await(pending.poll());
+    }
+
+    /**
+     * Reads and decodes the next block on this thread
+     *
+     * @return the bytes of the block, or null after the last block
+     */
+    private byte[] readBlock() {
+        int type = in.readBits(8);
+        if (type == BlockFormat.TYPE_END) {
+            atEnd = true;
+            readIndex();
+            return null;
+        }
+        int len = readLength();
+        return decode(type, readPayload(), len);
+    }
+
+    /**
+     * Reads the index and the trailer that follow the END marker and checks
+     * them against the blocks read
+     *
+     * @throws IllegalArgumentException if they do not match
+     */
+    private void readIndex() {
+        boolean ok = readInt() == lengths.size();
+        for (int i = 0; ok && i < lengths.size(); i++) {
+            ok = readInt() == lengths.get(i) && readInt() == sizes.get(i);
+        }
+        if (ok) {
+            long indexPosition = (long) in.readBits(32) << 32 | (in.readBits(32) & 0xffffffffL);
+            ok = indexPosition == position + 1 && in.readBits(32) == BlockFormat.BLOCK_MAGIC;
+        }
+        if (!ok) {
+            throw new IllegalArgumentException("Corrupt Grin block index");
+        }
+    }
+
+    /**
+     * Reads the length of a block, recording it for the index check
+     *
+     * @return the number of bytes the block decodes to
+     */
+    private int readLength() {
+        int len = readInt();
+        if (len > blockSize) {
+            throw new IllegalArgumentException("Corrupt Grin block file");
+        }
+        lengths.add(len);
+        return len;
+    }
+
+    /**
+     * Decodes a block payload into a new array
+     *
+     * @param type    the type of the block
+     * @param payload the payload of the block
+     * @param len     the number of bytes the block decodes to
+     * @return the decoded bytes
+     */
+    private byte[] decode(int type, byte[] payload, int len) {
+        if (type == BlockFormat.TYPE_STORED && payload.length == len) {
+            // the payload is the block, so it is not copied again
+            return payload;
+        }
+        byte[] data = new byte[len];
+        BlockFormat.decodeBlock(type, payload, data, len, options);
+        return data;
+    }
+
+    /**
+     * Reads a payload length and the payload that follows it. The array
+     * starts at the block size and grows as bytes arrive, so a damaged
+     * length cannot make it allocate more than the file holds.
+     *
+     * @return the payload
+     */
+    private byte[] readPayload() {
+        int size = readInt();
+        byte[] payload = new byte[Math.min(size, blockSize)];
+        int done = in.readBytes(payload, 0, payload.length);
+        while (done == payload.length && done < size) {
+            payload = Arrays.copyOf(payload, (int) Math.min(size, 2L * done));
+            done += in.readBytes(payload, done, payload.length - done);
+        }
+        if (done != size) {
+            throw new IllegalArgumentException("Truncated Grin block file");
+        }
+        sizes.add(BlockFormat.BLOCK_HEADER_SIZE + size);
+        position += BlockFormat.BLOCK_HEADER_SIZE + size;
+        return payload;
+    }
+
+    /**
+     * @return the next 32-bit length in the stream
+     */
+    private int readInt() {
+        int value = in.readBits(32);
+        if (value < 0) {
+            throw new IllegalArgumentException("Truncated Grin block file");
+        }
+        return value;
+    }
+
+    /**
+     * Decodes every remaining block to out
+     *
+     * @param out the stream decoded bytes are written to
+     */
+    public void readAll(BitOutputStream out) {
+        byte[] block = nextBlock();
+        while (block != null) {
+            out.writeBytes(block, 0, block.length);
+            block = nextBlock();
+        }
+    }
+
+    /**
+     * Stops the decoding threads and closes the stream
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,195 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A BlockWriter writes a block container (see BlockFormat). Blocks are
+ * encoded on a pool of threads and written in order as they finish.
+ */
+public class BlockWriter {
+    private BitOutputStream out;
+    private GrinOptions options;
+    private int blockSize;
+    private ExecutorService pool;       // null when encoding on this thread
+    private Deque<Future<byte[]>> pending;
+    private int maxPending;
+
+    private long position;              // bytes written so far
+    private List<Integer> lengths;      // decoded length of each block
+    private List<Integer> sizes;        // stored size of each block
+
+    /**
+     * Constructs a BlockWriter and writes the container header
+     *
+     * @param out     the stream to write the container to
+     * @param options the block size, thread count and coding of the blocks;
+     *                a block size of 0 uses the default
+     */
+    public BlockWriter(BitOutputStream out, GrinOptions options) {
+        this.out = out;
+        this.options = options;
+        blockSize = options.getBlockSize() > 0 ? options.getBlockSize()
+                : GrinOptions.DEFAULT_BLOCK_SIZE;
+        int threads = options.getThreads();
+        if (threads > 1) {
+            pool = newPool(threads);
+        }
+        pending = new ArrayDeque<>();
+        maxPending = 2 * threads;
+        lengths = new ArrayList<>();
+        sizes = new ArrayList<>();
+
+        out.writeBits(BlockFormat.BLOCK_MAGIC, 32);
+        out.writeBits(blockSize, 32);
+        position = 8;
+    }
+
+    /**
+     * @return the number of input bytes in each block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Splits the rest of the stream into blocks and writes them
+     *
+     * @param in the stream to encode
+     * @throws IOException if the stream cannot be read
+     */
+    public void writeAll(InputStream in) throws IOException {
+        while (true) {
+            byte[] data = new byte[blockSize];
+            int len = in.readNBytes(data, 0, blockSize);
+            if (len == 0) {
+                return;
+            }
+            writeBlock(data, len);
+        }
+    }
+
+    /**
+     * Splits the rest of the bit stream into blocks and writes them
+     *
+     * @param in the stream to encode, at a byte boundary
+     */
+    public void writeAll(BitInputStream in) {
+        while (true) {
+            byte[] data = new byte[blockSize];
+            int len = in.readBytes(data, 0, blockSize);
+            if (len == 0) {
+                return;
+            }
+            writeBlock(data, len);
+        }
+    }
+
+    /**
+     * Encodes a block and writes it once the blocks before it are written.
+     * The caller must not change data afterwards.
+     *
+     * @param data the bytes of the block
+     * @param len  the number of bytes in data that belong to the block
+     */
+    public void writeBlock(byte[] data, int len) {
+        if (pool == null) {
+            writeEncoded(BlockFormat.encodeBlock(data, len, options));
+            return;
+        }
+        pending.add(pool.submit(() -> BlockFormat.encodeBlock(data, len, options)));
+        if (pending.size() >= maxPending) {
+            writeEncoded(await(pending.poll()));
+        }
+    }
+
+    /**
+     * Writes an encoded block and records it in the index
+     *
+     * @param block the block as returned by BlockFormat.encodeBlock
+     */
+    private void writeEncoded(byte[] block) {
+        out.writeBytes(block, 0, block.length);
+        lengths.add(ByteBuffer.wrap(block).getInt(1));
+        sizes.add(block.length);
+        position += block.length;
+    }
+
+    /**
+     * Creates a pool of daemon threads, so a failed run does not keep the
+     * JVM alive
+     *
+     * @param threads the number of threads in the pool
+     * @return the pool
+     */
+    static ExecutorService newPool(int threads) {
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Waits for a block to finish encoding
+     *
+     * @param block the pending block
+     * @return the encoded block
+     */
+    static byte[] await(Future<byte[]> block) {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.toString());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause().toString());
+        }
+    }
+
+    /**
+     * Waits for every block given so far and writes them all to the output
+     */
+    public void flush() {
+        while (!pending.isEmpty()) {
+            writeEncoded(await(pending.poll()));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining blocks, the index and the trailer, then closes
+     * the stream.
+     */
+    public void close() {
+        while (!pending.isEmpty()) {
+            writeEncoded(await(pending.poll()));
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        out.writeBits(BlockFormat.TYPE_END, 8);
+        long indexPosition = position + 1;
+        out.writeBits(lengths.size(), 32);
+        for (int i = 0; i < lengths.size(); i++) {
+            out.writeBits(lengths.get(i), 32);
+            out.writeBits(sizes.get(i), 32);
+        }
+        out.writeBits((int) (indexPosition >>> 32), 32);
+        out.writeBits((int) indexPosition, 32);
+        out.writeBits(BlockFormat.BLOCK_MAGIC, 32);
+        out.close();
+    }
+}
@@ -0,0 +1,230 @@
+package edu.grinnell.csc207.compression;
+
+/**
+ * A ContextModel is an order-1 Huffman code: each byte is coded with a
+ * table chosen by the byte before it, which on text and logs is much more
+ * predictable than the byte on its own. The first byte of a block is coded
+ * as if it followed a 0.
+ *
+ * A table costs header space, so only the contexts that save more bits
+ * than their table takes get their own. The other contexts share one
+ * table built from their bytes together. The header is a bitmap of the
+ * contexts with their own table (256 bits), the shared table's canonical
+ * code lengths, and then the code lengths of each own table in context
+ * order.
+ *
+ * Decoding is one table lookup per byte. It cannot decode several bytes
+ * per lookup as a single tree does, since each byte picks the table of
+ * the next, and the tables of all the contexts do not fit in the
+ * first-level cache together: on 1 MB blocks of English text it runs at
+ * about 0.6 times the speed of a single tree, and on data with very short
+ * codes at about 0.3 times. BlockFormat stores a block with a single tree
+ * when no context pays for its own, so data without order-1 structure
+ * decodes at full speed.
+ */
+public class ContextModel {
+    private static final int CONTEXTS = 256;
+
+    // the tree each context is coded with, the shared tree repeated for
+    // the contexts without their own
+    private HuffmanTree[] trees;
+    private HuffmanTree shared;
+    private boolean[] own;
+
+    /**
+     * Constructs a ContextModel from its trees
+     *
+     * @param shared the tree of the contexts without their own
+     * @param own    which contexts have their own tree
+     * @param trees  the tree of each context
+     */
+    private ContextModel(HuffmanTree shared, boolean[] own, HuffmanTree[] trees) {
+        this.shared = shared;
+        this.own = own;
+        this.trees = trees;
+    }
+
+    /**
+     * Builds the order-1 model of data[off] through data[off + len - 1]
+     *
+     * @param data      the bytes to model
+     * @param off       the index of the first byte
+     * @param len       the number of bytes
+     * @param maxLength the longest code allowed in bits, or 0 for no limit
+     * @return the model
+     */
+    public static ContextModel build(byte[] data, int off, int len, int maxLength) {
+        Histogram[] counts = new Histogram[CONTEXTS];
+        for (int c = 0; c < CONTEXTS; c++) {
+            counts[c] = new Histogram();
+        }
+        int[] pairs = new int[CONTEXTS * 256];
+        int prev = 0;
+        for (int i = off; i < off + len; i++) {
+            int b = data[i] & 0xff;
+            pairs[prev << 8 | b]++;
+            prev = b;
+        }
+        Histogram all = new Histogram();
+        for (int c = 0; c < CONTEXTS; c++) {
+            for (int b = 0; b < 256; b++) {
+                counts[c].add(b, pairs[c << 8 | b]);
+            }
+            all.addAll(counts[c]);
+        }
+
+        // a context gets its own tree if it codes smaller than with the
+        // order-0 tree, counting the space its code lengths take
+        HuffmanTree order0 = newTree(all, maxLength);
+        boolean[] own = new boolean[CONTEXTS];
+        HuffmanTree[] trees = new HuffmanTree[CONTEXTS];
+        Histogram rest = new Histogram();
+        for (int c = 0; c < CONTEXTS; c++) {
+            if (counts[c].total() == 0) {
+                continue;
+            }
+            long sharedBits = order0.encodedBits(counts[c]);
+            // most contexts of data with little order-1 structure are
+            // ruled out without building their tree
+            if (leastBits(counts[c]) < sharedBits) {
+                HuffmanTree tree = newTree(counts[c], maxLength);
+                if (tree.encodedBits(counts[c]) + tree.codeLengthBits() < sharedBits) {
+                    own[c] = true;
+                    trees[c] = tree;
+                    continue;
+                }
+            }
+            rest.addAll(counts[c]);
+        }
+        HuffmanTree shared = newTree(rest, maxLength);
+        for (int c = 0; c < CONTEXTS; c++) {
+            if (!own[c]) {
+                trees[c] = shared;
+            }
+        }
+        return new ContextModel(shared, own, trees);
+    }
+
+    /**
+     * @param counts    the byte counts of a context
+     * @param maxLength the longest code allowed in bits, or 0 for no limit
+     * @return a canonical tree for the counts
+     */
+    private static HuffmanTree newTree(Histogram counts, int maxLength) {
+        HuffmanTree tree = maxLength > 0 ? new HuffmanTree(counts, maxLength)
+                : new HuffmanTree(counts);
+        return tree.toCanonical();
+    }
+
+    /**
+     * @param counts the byte counts of a context
+     * @return a lower bound on the bits any tree of its own would take:
+     *         the entropy of the counts, and at least two bits for the
+     *         length of each symbol and the count of symbols in the header
+     */
+    private static double leastBits(Histogram counts) {
+        double total = counts.total();
+        double bits = 12;
+        for (int b = 0; b < 256; b++) {
+            long n = counts.count(b);
+            if (n > 0) {
+                bits += 2 + n * Math.log(total / n) / Math.log(2);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return the number of contexts with their own tree
+     */
+    public int getOwnTrees() {
+        int n = 0;
+        for (boolean b : own) {
+            n += b ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the header that read rebuilds this model from
+     *
+     * @param out the output stream the header is written to
+     */
+    public void write(BitOutputStream out) {
+        for (int c = 0; c < CONTEXTS; c++) {
+            out.writeBit(own[c] ? 1 : 0);
+        }
+        shared.writeCodeLengths(out);
+        for (int c = 0; c < CONTEXTS; c++) {
+            if (own[c]) {
+                trees[c].writeCodeLengths(out);
+            }
+        }
+    }
+
+    /**
+     * Reads a header written by write and builds the decode tables
+     *
+     * @param in the stream positioned at the header
+     * @return the model
+     * @throws IllegalArgumentException if the header is malformed
+     */
+    public static ContextModel read(BitInputStream in) {
+        boolean[] own = new boolean[CONTEXTS];
+        for (int c = 0; c < CONTEXTS; c++) {
+            own[c] = in.readBit() == 1;
+        }
+        HuffmanTree shared = HuffmanTree.readCodeLengths(in);
+        shared.prepareSymbolDecoding();
+        HuffmanTree[] trees = new HuffmanTree[CONTEXTS];
+        for (int c = 0; c < CONTEXTS; c++) {
+            if (own[c]) {
+                trees[c] = HuffmanTree.readCodeLengths(in);
+                trees[c].prepareSymbolDecoding();
+            } else {
+                trees[c] = shared;
+            }
+        }
+        return new ContextModel(shared, own, trees);
+    }
+
+    /**
+     * Writes the codes of the bytes data[off] through data[off + len - 1].
+     * No EOF is written; the reader must know how many bytes to expect.
+     *
+     * @param data the bytes to encode
+     * @param off  the index of the first byte to encode
+     * @param len  the number of bytes to encode
+     * @param out  the output stream codes are written to
+     */
+    public void encodeBytes(byte[] data, int off, int len, BitOutputStream out) {
+        int prev = 0;
+        for (int i = off; i < off + len; i++) {
+            int b = data[i] & 0xff;
+            trees[prev].writeCode(out, b);
+            prev = b;
+        }
+    }
+
+    /**
+     * Decodes exactly len bytes into dst[off] through dst[off + len - 1].
+     *
+     * @param in  the InputStream that stores the codes
+     * @param dst the array decoded bytes are stored in
+     * @param off the index of the first decoded byte
+     * @param len the number of bytes to decode
+     * @throws IllegalArgumentException if a code is not one of a byte
+     */
+    public void decodeBytes(BitInputStream in, byte[] dst, int off, int len) {
+        HuffmanTree[] t = trees;
+        int prev = 0;
+        for (int i = off; i < off + len; i++) {
+            int b = t[prev].decodeSymbol(in);
+            if (b > 0xff) {
+                throw new IllegalArgumentException("Corrupt order-1 block");
+            }
+            dst[i] = (byte) b;
+            prev = b;
+        }
+    }
+}
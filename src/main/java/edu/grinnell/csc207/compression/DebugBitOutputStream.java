@@ -0,0 +1,69 @@
+package edu.grinnell.csc207.compression;
+
+/**
+ * A DebugBitOutputStream writes each bit as an ASCII 0 or 1 to another
+ * BitOutputStream, so the output can be read in a text editor.
+ */
+public class DebugBitOutputStream extends BitOutputStream {
+    private BitOutputStream output;
+
+    /**
+     * Constructs a new DebugBitOutputStream that writes to the given stream.
+     * @param output the stream the ASCII digits are written to
+     */
+    public DebugBitOutputStream(BitOutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Writes the given bit to the stream as an ASCII digit.
+     * @param bit the bit to write (0 or 1)
+     */
+    @Override
+    public void writeBit(int bit) {
+        if (bit < 0 || bit > 1) {
+            throw new IllegalArgumentException("Illegal bit: " + bit);
+        }
+        output.writeBits('0' + bit, 8);
+    }
+
+    /**
+     * Writes the lower n bits to the stream in big-endian style.
+     * @param bits the bits to write as an integer
+     * @param n the number of bits to write from the integer
+     */
+    @Override
+    public void writeBits(int bits, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            writeBit((bits >>> i) & 1);
+        }
+    }
+
+    /**
+     * Writes len whole bytes from src, eight bits at a time.
+     * @param src the array holding the bytes
+     * @param off the index of the first byte to write
+     * @param len the number of bytes to write
+     */
+    @Override
+    public void writeBytes(byte[] src, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            writeBits(src[i], 8);
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. Every bit has already been written
+     * to it as a whole byte, so there is nothing to pad.
+     */
+    @Override
+    public void flush() {
+        output.flush();
+    }
+
+    /** Closes the underlying stream */
+    @Override
+    public void close() {
+        output.close();
+    }
+}
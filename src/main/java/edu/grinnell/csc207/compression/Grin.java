@@ -1,8 +1,19 @@
 package edu.grinnell.csc207.compression;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -10,6 +21,84 @@ import java.util.Map;
  * The driver for the Grin compression program.
  */
 public class Grin {
+    private static final String USAGE =
+            "Usage: java Grin <encode|decode|train> [--parallel] [--sample[=SIZE]]"
+            + " [--blocks | --block-size=SIZE]"
+            + " [--threads=N] [--canonical] [--max-code-length=N] [--order=0|1] [--rle]"
+            + " [--lz[=LEVEL]] [--mmap] [--adaptive] [--model=FILE] [--batch] [--stats]"
+            + " <infile> <outfile> (- for stdin/stdout)\n"
+            + "A file that Huffman coding would not shrink is written as stored blocks,"
+            + " as with --blocks; every decoder reads both.";
+
+    // the models named by --model, shared by every file of a batch
+    private static final ModelCache MODELS = new ModelCache(null, 16);
+
+    /**
+     * An InputStream that counts the bytes read through it, so streams
+     * can be reported to the listener like files
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        /**
+         * @param in the stream to count
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * An OutputStream that counts the bytes written through it
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        /**
+         * @param out the stream to count
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
     /**
      * Decodes the .grin file denoted by infile and writes the output to the
      * .grin file denoted by outfile.
@@ -19,16 +108,137 @@ public class Grin {
      * @throws IOException
      */
     public static void decode(String infile, String outfile) throws IOException {
-        BitInputStream input = new BitInputStream(infile);
-        HuffmanTree huffTree = new HuffmanTree(input);
-        BitOutputStream output = new BitOutputStream(outfile);
+        decode(infile, outfile, new GrinOptions());
+    }
+
+    /**
+     * Decodes the .grin file denoted by infile and writes the output to the
+     * file denoted by outfile, using the given options. Both the original
+     * format and the block format are accepted.
+     * 
+     * @param infile  the file to decode
+     * @param outfile the file to ouptut to
+     * @param options the options that tune decoding
+     * @throws IOException
+     */
+    public static void decode(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        long start = options.clock();
+        decodeFile(infile, outfile, options);
+        if (options.getListener() != null) {
+            options.phase("total", start);
+            options.getListener().file(Files.size(Paths.get(outfile)),
+                    Files.size(Paths.get(infile)));
+        }
+    }
+
+    /**
+     * Decodes a file in whichever format it is in
+     * 
+     * @param infile  the file to decode
+     * @param outfile the file to ouptut to
+     * @param options the options that tune decoding
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void decodeFile(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        BitInputStream input = openInput(infile, options);
+        if (input.peekBits(32) == BlockFormat.MODEL_REF_MAGIC) {
+            if (options.getModel() == null) {
+                throw new IllegalArgumentException("Decoding " + infile + " needs --model");
+            }
+            GrinModel model = MODELS.load(options.getModel());
+            input.skipBits(32);
+            if (input.readBits(32) != model.getId()) {
+                throw new IllegalArgumentException(infile + " was not coded with "
+                        + options.getModel());
+            }
+            byte[] data = model.decodeBody(input);
+            input.close();
+            BitOutputStream output = openOutput(outfile, options);
+            output.writeBytes(data, 0, data.length);
+            output.close();
+            return;
+        }
+        if (input.peekBits(32) == BlockFormat.ADAPTIVE_MAGIC) {
+            new AdaptiveHuffman().decode(input, openOutput(outfile, options));
+            return;
+        }
+        if (input.peekBits(32) == BlockFormat.BLOCK_MAGIC) {
+            BlockReader reader = new BlockReader(input, options.getThreads(), options);
+            BitOutputStream output = openOutput(outfile, options);
+            reader.readAll(output);
+            reader.close();
+            output.close();
+            return;
+        }
+        long time = options.clock();
+        HuffmanTree huffTree = HuffmanTree.readHeader(input);
+        time = options.phase("header", time);
+        BitOutputStream output = openOutput(outfile, options);
         huffTree.decode(input, output);
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(huffTree.getSymbolCount(), huffTree.getDepth());
+        }
+    }
+
+    /**
+     * Opens a file for reading, through memory mappings if the options ask
+     * for them
+     * 
+     * @param file    the file to read
+     * @param options the options that choose how files are accessed
+     * @return a stream over the bits of file
+     * @throws IOException if the file cannot be opened
+     */
+    private static BitInputStream openInput(String file, GrinOptions options)
+            throws IOException {
+        return options.isMapped() ? BitInputStream.map(file) : new BitInputStream(file);
+    }
+
+    /**
+     * Opens a file for writing, through memory mappings if the options ask
+     * for them
+     * 
+     * @param file    the file to write
+     * @param options the options that choose how files are accessed
+     * @return a stream that writes bits to file
+     * @throws IOException if the file cannot be opened
+     */
+    private static BitOutputStream openOutput(String file, GrinOptions options)
+            throws IOException {
+        return options.isMapped() ? BitOutputStream.map(file) : new BitOutputStream(file);
+    }
+
+    /**
+     * Decodes a .grin stream from in and writes the output to out as it is
+     * decoded. Both the original format and the block format are accepted.
+     * 
+     * @param in      the stream to decode
+     * @param out     the stream to write the decoded bytes to
+     * @param options the options that tune decoding
+     * @throws IOException if a stream cannot be read or written
+     */
+    public static void decode(InputStream in, OutputStream out, GrinOptions options)
+            throws IOException {
+        long start = options.clock();
+        CountingInputStream counted = new CountingInputStream(in);
+        long raw;
+        try (GrinInputStream input = new GrinInputStream(counted, options)) {
+            raw = input.transferTo(out);
+        }
+        out.flush();
+        if (options.getListener() != null) {
+            options.phase("total", start);
+            options.getListener().file(raw, counted.count);
+        }
     }
 
     /**
      * Creates a mapping from 8-bit sequences to number-of-occurrences of
-     * those sequences in the given file. To do this, read the file using a
-     * BitInputStream, consuming 8 bits at a time.
+     * those sequences in the given file. The counts come from a Histogram;
+     * this map view is kept for callers that want boxed values.
      * 
      * @param file the file to read
      * @return a freqency map for the given file
@@ -36,14 +246,11 @@ public class Grin {
      */
     public static Map<Short, Integer> createFrequencyMap(String file) throws IOException {
         Map<Short, Integer> freqMap = new HashMap<>();
-        BitInputStream in = new BitInputStream(file);
-        while (in.hasBits()) {
-            short nextChar = (short) in.readBits(8);
-            int numberOfChar = 0;
-            if (freqMap != null && freqMap.get(nextChar) != null) {
-                numberOfChar = freqMap.get(nextChar);
+        Histogram histogram = Histogram.of(file);
+        for (int i = 0; i < 256; i++) {
+            if (histogram.count(i) > 0) {
+                freqMap.put((short) i, (int) histogram.count(i));
             }
-            freqMap.put(nextChar, numberOfChar + 1);
         }
         return freqMap;
     }
@@ -57,11 +264,222 @@ public class Grin {
      * @throws IOException
      */
     public static void encode(String infile, String outfile) throws IOException {
-        Map<Short, Integer> freqMap = createFrequencyMap(infile);
-        HuffmanTree huffTree = new HuffmanTree(freqMap);
-        BitInputStream input = new BitInputStream(infile);
-        BitOutputStream output = new BitOutputStream(outfile);
-        huffTree.encode(input, output);
+        encode(infile, outfile, new GrinOptions());
+    }
+
+    /**
+     * Encodes the given file denoted by infile and writes the output to the
+     * .grin file denoted by outfile, using the given options. A file that
+     * Huffman coding would not shrink is written as stored blocks, which
+     * the listener is told about.
+     * 
+     * @param infile  the file to encode.
+     * @param outfile the file to write the output to.
+     * @param options the options that tune encoding
+     * @throws IOException
+     */
+    public static void encode(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        long start = options.clock();
+        encodeFile(infile, outfile, options);
+        if (options.getListener() != null) {
+            options.phase("total", start);
+            options.getListener().file(Files.size(Paths.get(infile)),
+                    Files.size(Paths.get(outfile)));
+        }
+    }
+
+    /**
+     * Encodes a file in the format the options choose. Without a block
+     * size that is the single-stream format (magic 1846, or 1851 with
+     * canonical code lengths for a header), except that a file Huffman
+     * coding would not shrink is written as a block container (magic 1847)
+     * of stored blocks and reported to the listener as stored.
+     * 
+     * @param infile  the file to encode.
+     * @param outfile the file to write the output to.
+     * @param options the options that tune encoding
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void encodeFile(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        if (options.getModel() != null) {
+            // files coded with a model are single small records
+            GrinModel model = MODELS.load(options.getModel());
+            byte[] data = Files.readAllBytes(Paths.get(infile));
+            BitOutputStream output = openOutput(outfile, options);
+            model.encode(data, 0, data.length, output);
+            output.close();
+            return;
+        }
+        if (options.isAdaptive()) {
+            new AdaptiveHuffman().encode(openInput(infile, options),
+                    openOutput(outfile, options));
+            return;
+        }
+        if (options.getBlockSize() > 0) {
+            encodeBlocks(infile, outfile, options);
+            return;
+        }
+        long time = options.clock();
+        Histogram histogram;
+        if (options.getSampleSize() > 0) {
+            histogram = Histogram.sample(infile, options.getSampleSize());
+        } else if (options.isParallel()) {
+            histogram = Histogram.ofParallel(infile);
+        } else if (options.isMapped()) {
+            histogram = Histogram.ofMapped(infile);
+        } else {
+            histogram = Histogram.of(infile);
+        }
+        time = options.phase("count", time);
+        HuffmanTree huffTree;
+        if (options.getMaxCodeLength() > 0) {
+            huffTree = new HuffmanTree(histogram, options.getMaxCodeLength());
+            if (options.getListener() != null) {
+                options.getListener().cost("limit", huffTree.encodedBits(histogram),
+                        new HuffmanTree(histogram).encodedBits(histogram));
+            }
+        } else {
+            huffTree = new HuffmanTree(histogram);
+        }
+        if (options.isCanonical()) {
+            huffTree = huffTree.toCanonical();
+        }
+        time = options.phase("build", time);
+        long size = Files.size(Paths.get(infile));
+        long stored = BlockFormat.storedSize(size, GrinOptions.DEFAULT_BLOCK_SIZE);
+        boolean sampled = options.getSampleSize() > 0;
+        boolean canonical = options.isCanonical();
+        if (!sampled && (32 + BlockFormat.codedBits(huffTree, histogram, canonical)) / 8 > stored) {
+            encodeStored(infile, outfile, options);
+            return;
+        }
+        BitInputStream input = openInput(infile, options);
+        BitOutputStream output = openOutput(outfile, options);
+        if (options.isCanonical()) {
+            huffTree.writeCanonicalHeader(output);
+        } else {
+            huffTree.writeHeader(output);
+        }
+        time = options.phase("header", time);
+        Histogram exact = sampled ? new Histogram() : null;
+        huffTree.encodeText(input, output, exact);
+        options.phase("codes", time);
+        if (options.getListener() != null) {
+            options.getListener().tree(huffTree.getSymbolCount(), huffTree.getDepth());
+        }
+        if (exact != null) {
+            if (options.getListener() != null) {
+                // the same code length limit, so only the sampling is measured
+                HuffmanTree exactTree = options.getMaxCodeLength() > 0
+                        ? new HuffmanTree(exact, options.getMaxCodeLength())
+                        : new HuffmanTree(exact);
+                options.getListener().cost("sample", huffTree.encodedBits(exact),
+                        exactTree.encodedBits(exact));
+            }
+            // a sample only estimates the codes, so the file that was
+            // written decides whether storing would have been smaller
+            if (Files.size(Paths.get(outfile)) > stored) {
+                encodeStored(infile, outfile, options);
+            }
+        }
+    }
+
+    /**
+     * Encodes a file that coding would not shrink as blocks, which are
+     * stored as they are unless coding them pays. The container differs
+     * from the single-stream file that was asked for, so it is reported to
+     * the listener.
+     * 
+     * @param infile  the file to compress.
+     * @param outfile the file to write the output to.
+     * @param options the options that tune encoding
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void encodeStored(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        if (options.getListener() != null) {
+            options.getListener().stored(infile);
+        }
+        GrinOptions blocks = new GrinOptions(options);
+        blocks.setBlockSize(GrinOptions.DEFAULT_BLOCK_SIZE);
+        encodeBlocks(infile, outfile, blocks);
+    }
+
+    /**
+     * Encodes the given file into a block .grin file
+     * 
+     * @param infile  the file to compress.
+     * @param outfile the file to write the output to.
+     * @param options the options that tune encoding
+     * @throws IOException if a file cannot be read or written
+     */
+    private static void encodeBlocks(String infile, String outfile, GrinOptions options)
+            throws IOException {
+        BlockWriter writer = new BlockWriter(openOutput(outfile, options), options);
+        BitInputStream input = openInput(infile, options);
+        writer.writeAll(input);
+        input.close();
+        writer.close();
+    }
+
+    /**
+     * Encodes everything read from in into a block .grin stream, or an
+     * adaptive one if the options ask for it, written to out. The input is
+     * read once, so it may come from a pipe or a socket.
+     * 
+     * @param in      the stream to encode
+     * @param out     the stream to write the .grin stream to
+     * @param options the options that tune encoding
+     * @throws IOException if a stream cannot be read or written
+     */
+    public static void encode(InputStream in, OutputStream out, GrinOptions options)
+            throws IOException {
+        long start = options.clock();
+        CountingInputStream counted = new CountingInputStream(in);
+        CountingOutputStream grin = new CountingOutputStream(out);
+        if (options.isAdaptive()) {
+            new AdaptiveHuffman().encode(new BitInputStream(counted), new BitOutputStream(grin));
+        } else {
+            try (GrinOutputStream output = new GrinOutputStream(grin, options)) {
+                counted.transferTo(output);
+            }
+        }
+        if (options.getListener() != null) {
+            options.phase("total", start);
+            options.getListener().file(counted.count, grin.count);
+        }
+    }
+
+    /**
+     * Trains a model on a sample corpus and writes it to modelFile. The
+     * corpus is either one file or a directory, in which case every file in
+     * it is part of the sample.
+     * 
+     * @param corpus    the sample file or directory
+     * @param modelFile the file to write the model to
+     * @param options   the options that tune the model
+     * @return the model
+     * @throws IOException if a file cannot be read or written
+     */
+    public static GrinModel train(String corpus, String modelFile, GrinOptions options)
+            throws IOException {
+        Histogram sample = new Histogram();
+        if (Files.isDirectory(Paths.get(corpus))) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(Paths.get(corpus))) {
+                for (Path entry : entries) {
+                    if (Files.isRegularFile(entry)) {
+                        sample.addAll(Histogram.of(entry.toString()));
+                    }
+                }
+            }
+        } else {
+            sample = Histogram.of(corpus);
+        }
+        GrinModel model = GrinModel.train(sample, options.getMaxCodeLength());
+        model.write(modelFile);
+        return model;
     }
 
     /**
@@ -71,28 +489,99 @@ public class Grin {
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
+        GrinOptions options = new GrinOptions();
+        List<String> files = null;
+        try {
+            files = options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            System.exit(-1);
+        }
+        if (files.size() != 3) {
+            System.out.println("Wrong number of arguments");
+            System.out.println(USAGE);
+            System.exit(-1);
+        }
+
         boolean encode = false;
-        if (args[0].toLowerCase().compareTo("encode") == 0) {
+        boolean train = false;
+        if (files.get(0).toLowerCase().compareTo("encode") == 0) {
             encode = true;
-        } else if (args[0].toLowerCase().compareTo("decode") == 0) {
+        } else if (files.get(0).toLowerCase().compareTo("decode") == 0) {
             encode = false;
+        } else if (files.get(0).toLowerCase().compareTo("train") == 0) {
+            train = true;
         } else {
-            System.out.println("No decode or encode command provided");
-            System.out.println("Usage: java Grin <encode|decode> <infile> <outfile>");
+            System.out.println("No decode, encode or train command provided");
+            System.out.println(USAGE);
             System.exit(-1);
         }
 
-        File inputFile = new File(args[1]);
-        if (!(inputFile.exists())) {
+        // files written as stored blocks are reported through a listener,
+        // so there is one even without --stats
+        boolean report = options.getListener() != null;
+        GrinStats stats = report ? (GrinStats) options.getListener() : new GrinStats();
+        options.setListener(stats);
+
+        if (options.isBatch() && !train) {
+            // infile is a directory, glob or manifest and outfile a directory
+            int failures = new GrinBatch(encode, options).run(files.get(1), files.get(2));
+            printReport(stats, report);
+            System.exit(failures == 0 ? 0 : 1);
+        }
+
+        File inputFile = new File(files.get(1));
+        if (!files.get(1).equals("-") && !(inputFile.exists())) {
             System.out.println("Input file does not exist");
-            System.out.println("Usage: java Grin <encode|decode> <infile> <outfile>");
+            System.out.println(USAGE);
             System.exit(-1);
         }
 
-        if (encode) {
-            encode(args[1], args[2]);
-        } else {
-            decode(args[1], args[2]);
+        try {
+            if (train) {
+                GrinModel model = train(files.get(1), files.get(2), options);
+                System.out.printf("Trained model %08x into %s%n", model.getId(), files.get(2));
+            } else if (files.get(1).equals("-") || files.get(2).equals("-")) {
+                InputStream in = files.get(1).equals("-") ? System.in
+                        : new FileInputStream(files.get(1));
+                OutputStream out = files.get(2).equals("-") ? System.out
+                        : new FileOutputStream(files.get(2));
+                if (encode) {
+                    encode(in, out, options);
+                } else {
+                    decode(in, out, options);
+                }
+                in.close();
+                out.close();
+            } else if (encode) {
+                encode(files.get(1), files.get(2), options);
+            } else {
+                decode(files.get(1), files.get(2), options);
+            }
+        } catch (IllegalArgumentException e) {
+            // stderr, so the message never mixes with data written to stdout
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        printReport(stats, report);
+    }
+
+    /**
+     * Prints what the listener was told on stderr, so it never mixes with
+     * data written to stdout
+     * 
+     * @param stats the statistics of the run
+     * @param all   true to print every statistic, as --stats asks, and
+     *              false for only the files written as stored blocks
+     */
+    private static void printReport(GrinStats stats, boolean all) {
+        for (String file : stats.getStoredFiles()) {
+            System.err.println(file + " does not shrink when coded, so it is written as"
+                    + " stored blocks");
+        }
+        if (all) {
+            System.err.print(stats);
         }
     }
 }
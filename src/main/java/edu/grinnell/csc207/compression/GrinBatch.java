@@ -0,0 +1,249 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A GrinBatch encodes or decodes many files in one run, several at a time
+ * on a fixed pool of threads. Running a batch in one JVM pays for startup
+ * and JIT warm-up once instead of once per file.
+ *
+ * The files to process are named by a directory (every regular file in
+ * it), a glob such as logs/*.txt (matched in its directory), or a manifest
+ * file listing one path per line. A manifest entry's output keeps its
+ * relative path under the output directory, so entries with the same name
+ * in different directories do not overwrite each other.
+ */
+public class GrinBatch {
+    /**
+     * The outcome of processing one file
+     */
+    private static class Result {
+        private String name;
+        private long inBytes;
+        private long outBytes;
+        private long rawBytes;  // the uncompressed size, for throughput
+        private long nanos;
+        private String error;   // null if the file was processed
+    }
+
+    private boolean encode;
+    private GrinOptions options;
+    private int threads;
+
+    /**
+     * Constructs a GrinBatch
+     *
+     * @param encode  true to encode the files, false to decode them
+     * @param options the options every file is processed with; the thread
+     *                count is the number of files processed at once
+     */
+    public GrinBatch(boolean encode, GrinOptions options) {
+        this.encode = encode;
+        // files are the unit of parallelism, so each is coded on one thread
+        this.options = new GrinOptions(options);
+        this.options.setThreads(1);
+        this.options.setBatch(false);
+        this.threads = options.getThreads();
+    }
+
+    /**
+     * Lists the files named by a directory, glob or manifest
+     *
+     * @param source a directory, a glob, or a manifest file
+     * @return the files, in a stable order
+     * @throws IOException if the directory or manifest cannot be read
+     */
+    public static List<Path> expand(String source) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Path path = Paths.get(source);
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                for (Path entry : entries) {
+                    if (Files.isRegularFile(entry)) {
+                        files.add(entry);
+                    }
+                }
+            }
+        } else if (isGlob(source)) {
+            Path dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+            String glob = path.getFileName().toString();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, glob)) {
+                for (Path entry : entries) {
+                    if (Files.isRegularFile(entry)) {
+                        files.add(entry);
+                    }
+                }
+            }
+        } else {
+            for (String line : Files.readAllLines(path)) {
+                if (!line.isBlank()) {
+                    files.add(Paths.get(line.strip()));
+                }
+            }
+            return files;
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * @param source a directory, a glob, or a manifest file
+     * @return true iff source is a glob
+     */
+    private static boolean isGlob(String source) {
+        return !Files.isDirectory(Paths.get(source)) && source.matches(".*[*?\\[{].*");
+    }
+
+    /**
+     * @param file     an input file
+     * @param keepPath true to keep the input's relative path, for files
+     *                 that come from a manifest and so from any directory
+     * @return the path of the output file written for it, relative to the
+     *         output directory: the input's name, or its relative path if
+     *         keepPath is true and it neither is absolute nor climbs out of
+     *         the current directory
+     */
+    private Path outputName(Path file, boolean keepPath) {
+        Path relative = file.normalize();
+        if (!keepPath || relative.isAbsolute() || relative.startsWith("..")) {
+            relative = file.getFileName();
+        }
+        String name = relative.getFileName().toString();
+        if (encode) {
+            name = name + ".grin";
+        } else {
+            name = name.endsWith(".grin") ? name.substring(0, name.length() - 5) : name + ".out";
+        }
+        return relative.resolveSibling(name);
+    }
+
+    /**
+     * Processes every file named by source, writing the outputs into
+     * outputDir, and prints a line for each file as it finishes and a
+     * summary at the end to stderr. A file that fails is reported and does
+     * not stop the others, and neither does a file whose output would
+     * overwrite another's.
+     *
+     * @param source    a directory, a glob, or a manifest file
+     * @param outputDir the directory to write the outputs to
+     * @return the number of files that failed
+     * @throws IOException if the files cannot be listed or outputDir cannot
+     *                     be created
+     */
+    public int run(String source, String outputDir) throws IOException {
+        List<Path> files = expand(source);
+        Path out = Files.createDirectories(Paths.get(outputDir));
+
+        ExecutorService pool = BlockWriter.newPool(threads);
+        CompletionService<Result> done = new ExecutorCompletionService<>(pool);
+        long start = System.nanoTime();
+        boolean manifest = !Files.isDirectory(Paths.get(source)) && !isGlob(source);
+        Map<Path, Path> outputs = new HashMap<>();
+        for (Path file : files) {
+            Path output = out.resolve(outputName(file, manifest));
+            Path other = outputs.putIfAbsent(output, file);
+            if (other != null) {
+                done.submit(() -> failure(file, "output " + output + " is also written for "
+                        + other));
+            } else {
+                done.submit(() -> process(file, output));
+            }
+        }
+
+        long inTotal = 0;
+        long outTotal = 0;
+        long rawTotal = 0;
+        int failures = 0;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                Result result = done.take().get();
+                if (result.error != null) {
+                    failures++;
+                    System.err.printf("%s: failed: %s%n", result.name, result.error);
+                    continue;
+                }
+                inTotal += result.inBytes;
+                outTotal += result.outBytes;
+                rawTotal += result.rawBytes;
+                System.err.printf("%s: %d -> %d bytes in %d ms (%.1f MB/s)%n", result.name,
+                        result.inBytes, result.outBytes, result.nanos / 1000000,
+                        rate(result.rawBytes, result.nanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.toString());
+        } catch (ExecutionException e) {
+            // process catches what the codecs throw, so this is an Error
+            throw new RuntimeException(e.getCause().toString());
+        } finally {
+            pool.shutdownNow();
+        }
+        long nanos = System.nanoTime() - start;
+        System.err.printf("%d files, %d failed: %d -> %d bytes in %d ms (%.1f MB/s"
+                + " on %d threads)%n", files.size(), failures, inTotal, outTotal,
+                nanos / 1000000, rate(rawTotal, nanos), threads);
+        return failures;
+    }
+
+    /**
+     * Encodes or decodes one file
+     *
+     * @param in  the file to read
+     * @param out the file to write
+     * @return the outcome
+     */
+    private Result process(Path in, Path out) {
+        Result result = new Result();
+        result.name = in.toString();
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(out.getParent());
+            if (encode) {
+                Grin.encode(in.toString(), out.toString(), options);
+            } else {
+                Grin.decode(in.toString(), out.toString(), options);
+            }
+            result.inBytes = Files.size(in);
+            result.outBytes = Files.size(out);
+            // throughput is measured on the uncompressed side
+            result.rawBytes = encode ? result.inBytes : result.outBytes;
+        } catch (IOException | RuntimeException e) {
+            result.error = e.toString();
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * @param in    the file that was not processed
+     * @param error why
+     * @return the outcome
+     */
+    private static Result failure(Path in, String error) {
+        Result result = new Result();
+        result.name = in.toString();
+        result.error = error;
+        return result;
+    }
+
+    /**
+     * @param bytes a number of bytes
+     * @param nanos the time they took
+     * @return the rate in MB/s (10^6 bytes per second)
+     */
+    private static double rate(long bytes, long nanos) {
+        return nanos == 0 ? 0.0 : bytes * 1e3 / nanos;
+    }
+}
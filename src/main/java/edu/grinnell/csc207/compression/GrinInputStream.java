@@ -0,0 +1,180 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A GrinInputStream decompresses a .grin stream as it is read. The block,
+ * single-stream and adaptive formats are all accepted; block streams are
+ * decoded one block at a time, with the blocks ahead decoded on other
+ * threads, and the other formats are decoded in chunks.
+ */
+public class GrinInputStream extends InputStream {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private BitInputStream in;
+    private BlockReader reader;     // null for the single-stream format
+    private HuffmanTree tree;       // null unless in the single-stream format
+    private AdaptiveHuffman model;  // null unless in the adaptive format
+    private byte[] data;            // the decoded block or chunk
+    private boolean done;           // true once the stream is used up
+    private int pos;                // next byte of data to return
+    private int limit;              // number of valid bytes in data
+
+    /**
+     * Constructs a GrinInputStream that decodes on one thread
+     *
+     * @param in the compressed stream
+     */
+    public GrinInputStream(InputStream in) {
+        this(new BitInputStream(in), 1, new GrinOptions());
+    }
+
+    /**
+     * Constructs a GrinInputStream
+     *
+     * @param in      the compressed stream
+     * @param threads the number of threads that decode blocks
+     */
+    public GrinInputStream(InputStream in, int threads) {
+        this(new BitInputStream(in), threads, new GrinOptions());
+    }
+
+    /**
+     * Constructs a GrinInputStream that decodes with the threads of the
+     * options and reports the phases of each block to their listener
+     *
+     * @param in      the compressed stream
+     * @param options the options that tune decoding
+     */
+    public GrinInputStream(InputStream in, GrinOptions options) {
+        this(new BitInputStream(in), options.getThreads(), options);
+    }
+
+    /**
+     * Constructs a GrinInputStream reading from a channel
+     *
+     * @param in      the compressed channel
+     * @param threads the number of threads that decode blocks
+     */
+    public GrinInputStream(ReadableByteChannel in, int threads) {
+        this(new BitInputStream(in), threads, new GrinOptions());
+    }
+
+    /**
+     * Constructs a GrinInputStream and reads the header of the stream
+     *
+     * @param in      the compressed bits
+     * @param threads the number of threads that decode blocks
+     * @param options the options whose listener is told about each block
+     * @throws IllegalArgumentException if the stream is not a .grin stream
+     */
+    private GrinInputStream(BitInputStream in, int threads, GrinOptions options) {
+        this.in = in;
+        if (in.peekBits(32) == BlockFormat.BLOCK_MAGIC) {
+            reader = new BlockReader(in, threads, options);
+        } else if (in.peekBits(32) == BlockFormat.ADAPTIVE_MAGIC) {
+            in.skipBits(32);
+            model = new AdaptiveHuffman();
+            data = new byte[CHUNK_SIZE];
+        } else {
+            tree = HuffmanTree.readHeader(in);
+            data = new byte[CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Decodes the next block or chunk into data. An empty block leaves
+     * nothing to return but does not end the stream.
+     *
+     * @return false iff the stream is used up
+     */
+    private boolean fill() {
+        pos = 0;
+        limit = 0;
+        if (reader != null && !done) {
+            data = reader.nextBlock();
+            done = data == null;
+            if (!done) {
+                limit = data.length;
+            }
+        } else if (tree != null) {
+            limit = tree.decodeUntilEof(in, data, 0, data.length);
+            if (limit < data.length) {
+                // the chunk stopped short at the EOF symbol
+                tree = null;
+            }
+        } else if (model != null) {
+            limit = model.decodeUntilEof(in, data, 0, data.length);
+            if (limit < data.length) {
+                model = null;
+            }
+        } else {
+            done = true;
+        }
+        return !done;
+    }
+
+    /**
+     * Reads one decoded byte
+     *
+     * @return the byte, or -1 at the end of the stream
+     */
+    @Override
+    public int read() {
+        while (pos == limit) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return data[pos++] & 0xff;
+    }
+
+    /**
+     * Reads up to len decoded bytes into buf
+     *
+     * @param buf the array to store the bytes in
+     * @param off the index of the first byte to store
+     * @param len the most bytes to read
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    @Override
+    public int read(byte[] buf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == limit) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(data, pos, buf, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * @return the number of decoded bytes that can be read without decoding
+     *         more of the stream
+     */
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    /**
+     * Closes the underlying stream and stops the decoding threads
+     */
+    @Override
+    public void close() {
+        if (reader != null) {
+            reader.close();
+        } else {
+            in.close();
+        }
+        done = true;
+        pos = 0;
+        limit = 0;
+    }
+}
@@ -0,0 +1,56 @@
+package edu.grinnell.csc207.compression;
+
+/**
+ * A GrinListener is told where the time goes while files are encoded or
+ * decoded. Blocks are coded on several threads at once, so a listener may
+ * be called from several threads and must be thread-safe.
+ *
+ * The phases are count (the histogram), build (the tree), header (writing
+ * or reading the tree), codes (the bit loop) and total (the whole file),
+ * and match (finding LZ77 matches) for blocks coded with them. Phases of
+ * blocks are reported once per block.
+ */
+public interface GrinListener {
+    /**
+     * Reports the wall time of one phase
+     *
+     * @param name  the name of the phase
+     * @param nanos how long the phase took, in nanoseconds
+     */
+    void phase(String name, long nanos);
+
+    /**
+     * Reports a tree that was built or read
+     *
+     * @param symbols the number of symbols with codes, EOF included
+     * @param depth   the length of the longest code, in bits
+     */
+    void tree(int symbols, int depth);
+
+    /**
+     * Reports a file that was finished, whether it was encoded or decoded
+     *
+     * @param rawBytes  the size of the uncompressed file
+     * @param grinBytes the size of the .grin file
+     */
+    void file(long rawBytes, long grinBytes);
+
+    /**
+     * Reports what a choice that trades compression for speed or a bound
+     * costs, such as limiting code lengths
+     *
+     * @param name        what the choice was
+     * @param bits        the bits the codes take with it
+     * @param optimalBits the bits they would take without it
+     */
+    void cost(String name, long bits, long optimalBits);
+
+    /**
+     * Reports a file written as a container of stored blocks instead of
+     * the single-stream format that was asked for, because Huffman coding
+     * would not have shrunk it
+     *
+     * @param file the file that was encoded
+     */
+    void stored(String file);
+}
@@ -0,0 +1,215 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A GrinModel is a Huffman code trained on a sample of data and shared by
+ * many small records. A record coded with a model stores only the model's
+ * id instead of a whole tree, which for small records is often larger than
+ * the record itself.
+ *
+ * A model file holds the magic number MODEL_MAGIC, the id (32 bits) and the
+ * canonical code lengths. A record holds the magic number MODEL_REF_MAGIC,
+ * the id (32 bits), its length plus one as an Elias gamma code and then the
+ * codes. The id is a CRC-32 of the code lengths, so the same training data
+ * always gives the same id.
+ *
+ * A GrinModel is immutable and may be shared by threads.
+ */
+public class GrinModel {
+    // the most bytes of a record allocated before any of them are decoded
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private int id;
+    private HuffmanTree tree;
+
+    /**
+     * Constructs a GrinModel and builds its decode table
+     *
+     * @param tree the canonical codes of the model
+     */
+    private GrinModel(HuffmanTree tree) {
+        this.tree = tree;
+        tree.prepareDecoding();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        tree.writeCodeLengths(out);
+        out.close();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        id = (int) crc.getValue();
+    }
+
+    /**
+     * Trains a model on a histogram of sample data. Every byte value is
+     * counted once more than in the sample, so the model can code records
+     * holding bytes the sample never had.
+     *
+     * @param sample    the byte counts of the sample data
+     * @param maxLength the longest code allowed in bits, or 0 for no limit
+     * @return the model
+     */
+    public static GrinModel train(Histogram sample, int maxLength) {
+        Histogram counts = new Histogram();
+        counts.addAll(sample);
+        counts.smooth();
+        HuffmanTree tree = maxLength > 0 ? new HuffmanTree(counts, maxLength)
+                : new HuffmanTree(counts);
+        return new GrinModel(tree.toCanonical());
+    }
+
+    /**
+     * @return the id that records coded with this model refer to
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Writes this model to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String file) throws IOException {
+        BitOutputStream out = new BitOutputStream(file);
+        out.writeBits(BlockFormat.MODEL_MAGIC, 32);
+        out.writeBits(id, 32);
+        tree.writeCodeLengths(out);
+        out.close();
+    }
+
+    /**
+     * Reads a model written by write
+     *
+     * @param file the model file
+     * @return the model
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a model file or is
+     *                                  corrupt
+     */
+    public static GrinModel read(String file) throws IOException {
+        BitInputStream in = new BitInputStream(file);
+        try {
+            if (in.readBits(32) != BlockFormat.MODEL_MAGIC) {
+                throw new IllegalArgumentException("Input file must be a Grin model file");
+            }
+            int id = in.readBits(32);
+            GrinModel model = new GrinModel(HuffmanTree.readCodeLengths(in));
+            if (model.id != id) {
+                throw new IllegalArgumentException("Corrupt Grin model file");
+            }
+            return model;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Codes one record with this model
+     *
+     * @param data the bytes of the record
+     * @param off  the index of the first byte of the record
+     * @param len  the number of bytes in the record
+     * @return the coded record
+     */
+    public byte[] encode(byte[] data, int off, int len) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 16);
+        BitOutputStream out = new BitOutputStream(bytes);
+        encode(data, off, len, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes one record coded with this model
+     *
+     * @param data the bytes of the record
+     * @param off  the index of the first byte of the record
+     * @param len  the number of bytes in the record
+     * @param out  the stream to write the record to
+     */
+    public void encode(byte[] data, int off, int len, BitOutputStream out) {
+        out.writeBits(BlockFormat.MODEL_REF_MAGIC, 32);
+        out.writeBits(id, 32);
+        // Elias gamma code of len + 1: one 0 per bit after the first
+        long value = len + 1L;
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        out.writeBits(0, bits - 1);
+        out.writeBits((int) value, bits);
+        tree.encodeBytes(data, off, len, out);
+    }
+
+    /**
+     * Decodes a record coded with this model
+     *
+     * @param record the coded record
+     * @return the bytes of the record
+     * @throws IllegalArgumentException if the record was not coded with this
+     *                                  model
+     */
+    public byte[] decode(byte[] record) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(record));
+        if (in.readBits(32) != BlockFormat.MODEL_REF_MAGIC || in.readBits(32) != id) {
+            throw new IllegalArgumentException("Record was not coded with model " + id);
+        }
+        return decodeBody(in);
+    }
+
+    /**
+     * Decodes the length and codes of a record whose magic number and id
+     * have been read
+     *
+     * @param in the stream positioned after the id
+     * @return the bytes of the record
+     * @throws IllegalArgumentException if the length is malformed or the
+     *                                  input ends before that many bytes
+     */
+    byte[] decodeBody(BitInputStream in) {
+        int zeros = 0;
+        int bit = in.readBit();
+        while (bit == 0) {
+            zeros++;
+            bit = in.readBit();
+        }
+        if (bit == -1 || zeros > 31) {
+            throw new IllegalArgumentException("Corrupt Grin record length");
+        }
+        long value = (1L << zeros) | (in.readBits(zeros) & 0xffffffffL);
+        if (value - 1 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Corrupt Grin record length");
+        }
+        // the length is not trusted, so the record grows as its codes are
+        // read rather than being allocated up front
+        int len = (int) (value - 1);
+        byte[] data = new byte[Math.min(len, CHUNK_SIZE)];
+        int done = 0;
+        while (done < len) {
+            if (done == data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(len, 2L * data.length));
+            }
+            tree.decodeBytes(in, data, done, data.length - done);
+            done = data.length;
+        }
+        return data;
+    }
+
+    /**
+     * Reads the model id of a coded record without decoding it
+     *
+     * @param record the coded record
+     * @return the id of the model the record was coded with
+     * @throws IllegalArgumentException if record is not a coded record
+     */
+    public static int idOf(byte[] record) {
+        if (record.length < 8 || ByteBuffer.wrap(record).getInt(0)
+                != BlockFormat.MODEL_REF_MAGIC) {
+            throw new IllegalArgumentException("Not a Grin record");
+        }
+        return ByteBuffer.wrap(record).getInt(4);
+    }
+}
@@ -0,0 +1,480 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command-line options that tune how Grin encodes and decodes files.
+ * Options are written as --name or --name=value and may appear anywhere
+ * after the command.
+ */
+public class GrinOptions {
+    /** the block size used by --blocks */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** the effort level of --lz without a level */
+    public static final int DEFAULT_LZ_LEVEL = 6;
+
+    /** the bytes of a file read by --sample */
+    public static final long DEFAULT_SAMPLE_SIZE = 16L << 20;
+
+    /**
+     * the shortest code length limit, enough for every symbol of the
+     * largest alphabet, the bytes and the LZ77 lengths
+     */
+    public static final int MIN_CODE_LENGTH = 9;
+
+    /** the longest code length limit */
+    public static final int MAX_CODE_LENGTH = 32;
+
+    private boolean parallel;
+    private long sampleSize;
+    private int blockSize;
+    private int threads;
+    private boolean canonical;
+    private int maxCodeLength;
+    private int contextOrder;
+    private boolean runLength;
+    private int lzLevel;
+    private boolean mapped;
+    private boolean adaptive;
+    private String model;
+    private boolean batch;
+    private GrinListener listener;
+
+    /**
+     * Constructs the default options
+     */
+    public GrinOptions() {
+        parallel = false;
+        sampleSize = 0;
+        blockSize = 0;
+        threads = Runtime.getRuntime().availableProcessors();
+        canonical = false;
+        maxCodeLength = 0;
+        contextOrder = 0;
+        runLength = false;
+        lzLevel = 0;
+        mapped = false;
+        adaptive = false;
+        model = null;
+        batch = false;
+        listener = null;
+    }
+
+    /**
+     * Constructs a copy of other
+     *
+     * @param other the options to copy
+     */
+    public GrinOptions(GrinOptions other) {
+        parallel = other.parallel;
+        sampleSize = other.sampleSize;
+        blockSize = other.blockSize;
+        threads = other.threads;
+        canonical = other.canonical;
+        maxCodeLength = other.maxCodeLength;
+        contextOrder = other.contextOrder;
+        runLength = other.runLength;
+        lzLevel = other.lzLevel;
+        mapped = other.mapped;
+        adaptive = other.adaptive;
+        model = other.model;
+        batch = other.batch;
+        listener = other.listener;
+    }
+
+    /**
+     * Removes the options from args, recording them in this object
+     *
+     * @param args the command-line arguments
+     * @return the arguments that are not options, in order
+     * @throws IllegalArgumentException if an option is not recognized
+     */
+    public List<String> parse(String[] args) {
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                rest.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            String name = eq == -1 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq == -1 ? null : arg.substring(eq + 1);
+            switch (name) {
+                case "parallel":
+                    parallel = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "sample":
+                    sampleSize = value == null ? DEFAULT_SAMPLE_SIZE : parseSize(arg, value);
+                    if (sampleSize <= 0) {
+                        throw new IllegalArgumentException("Sample size must be positive");
+                    }
+                    break;
+                case "block-size":
+                    blockSize = parseInt(arg, value);
+                    if (blockSize <= 0) {
+                        throw new IllegalArgumentException("Block size must be positive");
+                    }
+                    break;
+                case "blocks":
+                    blockSize = DEFAULT_BLOCK_SIZE;
+                    break;
+                case "threads":
+                    threads = parseInt(arg, value);
+                    if (threads <= 0) {
+                        throw new IllegalArgumentException("Thread count must be positive");
+                    }
+                    break;
+                case "canonical":
+                    // a single stream can hold canonical codes too, so small
+                    // files are not put in a container
+                    canonical = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "max-code-length":
+                    maxCodeLength = parseInt(arg, value);
+                    if (maxCodeLength != 0 && (maxCodeLength < MIN_CODE_LENGTH
+                            || maxCodeLength > MAX_CODE_LENGTH)) {
+                        throw new IllegalArgumentException("Max code length must be 0 or "
+                                + MIN_CODE_LENGTH + " to " + MAX_CODE_LENGTH);
+                    }
+                    break;
+                case "order":
+                    contextOrder = parseInt(arg, value);
+                    if (contextOrder != 0 && contextOrder != 1) {
+                        throw new IllegalArgumentException("Context order must be 0 or 1");
+                    }
+                    if (blockSize == 0) {
+                        blockSize = DEFAULT_BLOCK_SIZE;
+                    }
+                    break;
+                case "rle":
+                    runLength = value == null || Boolean.parseBoolean(value);
+                    if (blockSize == 0) {
+                        blockSize = DEFAULT_BLOCK_SIZE;
+                    }
+                    break;
+                case "lz":
+                    lzLevel = value == null ? DEFAULT_LZ_LEVEL : parseInt(arg, value);
+                    if (lzLevel < 0 || lzLevel > 9) {
+                        throw new IllegalArgumentException("LZ77 level must be 0 to 9");
+                    }
+                    if (blockSize == 0) {
+                        blockSize = DEFAULT_BLOCK_SIZE;
+                    }
+                    break;
+                case "mmap":
+                    mapped = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "adaptive":
+                    adaptive = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "stats":
+                    listener = value == null || Boolean.parseBoolean(value)
+                            ? new GrinStats() : null;
+                    break;
+                case "batch":
+                    batch = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "model":
+                    if (value == null || value.isEmpty()) {
+                        throw new IllegalArgumentException("Option needs a value: " + arg);
+                    }
+                    model = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return rest;
+    }
+
+    /**
+     * Parses a number that may end in K, M or G for powers of 1024
+     *
+     * @param arg   the whole option, for error messages
+     * @param value the text after the = sign
+     * @return the number
+     * @throws IllegalArgumentException if value is missing or malformed
+     */
+    private static long parseSize(String arg, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Option needs a value: " + arg);
+        }
+        long unit = 1;
+        char last = Character.toUpperCase(value.charAt(value.length() - 1));
+        if (last == 'K' || last == 'M' || last == 'G') {
+            unit = last == 'K' ? 1L << 10 : last == 'M' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(value), unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + arg);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Number out of range: " + arg);
+        }
+    }
+
+    /**
+     * Parses a number that may end in K, M or G, as parseSize, that must
+     * fit in an int
+     *
+     * @param arg   the whole option, for error messages
+     * @param value the text after the = sign
+     * @return the number
+     * @throws IllegalArgumentException if value is missing, malformed or
+     *                                  out of the range of an int
+     */
+    private static int parseInt(String arg, String value) {
+        long n = parseSize(arg, value);
+        if (n < Integer.MIN_VALUE || n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Number out of range: " + arg);
+        }
+        return (int) n;
+    }
+
+    /**
+     * @return true iff large inputs should be counted on several threads
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel true to count large inputs on several threads
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return about how many bytes of a file its tree is built from, or 0 to
+     *         count every byte
+     */
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @param sampleSize about how many bytes of a file its tree is built
+     *                   from, or 0 to count every byte; only the original
+     *                   format makes a separate counting pass to sample
+     */
+    public void setSampleSize(long sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the number of input bytes per block, or 0 to write the
+     *         original single-stream format
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize the number of input bytes per block, or 0 to write the
+     *                  original single-stream format
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return the number of threads that encode or decode blocks
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of threads that encode or decode blocks
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return true iff headers store canonical code lengths instead of trees
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * @param canonical true to store canonical code lengths instead of trees,
+     *                  in blocks or in the single-stream header (magic 1851)
+     */
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     * @return the longest code allowed in bits, or 0 for no limit
+     */
+    public int getMaxCodeLength() {
+        return maxCodeLength;
+    }
+
+    /**
+     * @param maxCodeLength the longest code allowed in bits, or 0 for no limit
+     */
+    public void setMaxCodeLength(int maxCodeLength) {
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * @return the number of preceding bytes each byte's code depends on, 0
+     *         or 1
+     */
+    public int getContextOrder() {
+        return contextOrder;
+    }
+
+    /**
+     * @param contextOrder 1 to code each byte with a table chosen by the
+     *                     byte before it, 0 for one table per block; only
+     *                     block files can hold order-1 codes
+     */
+    public void setContextOrder(int contextOrder) {
+        this.contextOrder = contextOrder;
+    }
+
+    /**
+     * @return true iff runs of a repeated byte are coded as run-length
+     *         symbols
+     */
+    public boolean isRunLength() {
+        return runLength;
+    }
+
+    /**
+     * @param runLength true to code runs of a repeated byte as run-length
+     *                  symbols; only block files can hold them, and blocks
+     *                  coded with an order-1 model do not
+     */
+    public void setRunLength(boolean runLength) {
+        this.runLength = runLength;
+    }
+
+    /**
+     * @return the effort level of the LZ77 match finder, 1 (fastest) to 9
+     *         (smallest), or 0 to find no matches
+     */
+    public int getLzLevel() {
+        return lzLevel;
+    }
+
+    /**
+     * @param lzLevel the effort level of the LZ77 match finder, 1 (fastest)
+     *                to 9 (smallest), or 0 to find no matches; only block
+     *                files can hold matches, and blocks coded with them use
+     *                neither an order-1 model nor run-length symbols
+     */
+    public void setLzLevel(int lzLevel) {
+        this.lzLevel = lzLevel;
+    }
+
+    /**
+     * @return true iff files are read and written through memory mappings
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * @param mapped true to read and write files through memory mappings
+     */
+    public void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    /**
+     * @return true iff files are encoded in one pass with an adaptive code
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @param adaptive true to encode in one pass with an adaptive code
+     *                 instead of a stored tree
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return the trained model file that records are coded with, or null
+     *         to store a tree in every file
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * @param model the trained model file that records are coded with, or
+     *              null to store a tree in every file
+     */
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /**
+     * @return true iff the input names many files and the output is a
+     *         directory
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * @param batch true if the input names many files and the output is a
+     *              directory
+     */
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * @return the listener told about each phase of coding, or null
+     */
+    public GrinListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener the listener told about each phase of coding, or null
+     *                 to measure nothing
+     */
+    public void setListener(GrinListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts timing a phase. Without a listener nothing is timed, so
+     * measuring costs nothing when it is turned off.
+     *
+     * @return the current time in nanoseconds, or 0 if there is no listener
+     */
+    long clock() {
+        return listener == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports a phase to the listener, if there is one
+     *
+     * @param name  the name of the phase
+     * @param start the time the phase started, from clock
+     * @return the time the phase ended, to start the next phase from
+     */
+    long phase(String name, long start) {
+        if (listener == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        listener.phase(name, now - start);
+        return now;
+    }
+}
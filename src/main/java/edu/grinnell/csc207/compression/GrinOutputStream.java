@@ -0,0 +1,151 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A GrinOutputStream compresses everything written to it into a block .grin
+ * stream. Bytes are collected into blocks of the configured size, and each
+ * full block is coded with its own tree, so memory use is bounded by the
+ * block size and the input is only seen once.
+ */
+public class GrinOutputStream extends OutputStream {
+    private OutputStream stream;    // null when writing to a channel
+    private BlockWriter writer;     // null once the stream is closed
+    private byte[] block;
+    private int count;              // bytes of block filled so far
+
+    /**
+     * Constructs a GrinOutputStream with the default options
+     *
+     * @param out the stream the compressed bytes are written to
+     */
+    public GrinOutputStream(OutputStream out) {
+        this(out, new GrinOptions());
+    }
+
+    /**
+     * Constructs a GrinOutputStream
+     *
+     * @param out     the stream the compressed bytes are written to
+     * @param options the block size, threads and coding of the blocks
+     */
+    public GrinOutputStream(OutputStream out, GrinOptions options) {
+        this(new BitOutputStream(out), options);
+        stream = out;
+    }
+
+    /**
+     * Constructs a GrinOutputStream writing to a channel
+     *
+     * @param out     the channel the compressed bytes are written to
+     * @param options the block size, threads and coding of the blocks
+     */
+    public GrinOutputStream(WritableByteChannel out, GrinOptions options) {
+        this(new BitOutputStream(out), options);
+    }
+
+    /**
+     * Constructs a GrinOutputStream and writes the container header
+     *
+     * @param out     the stream the compressed bits are written to
+     * @param options the block size, threads and coding of the blocks
+     */
+    private GrinOutputStream(BitOutputStream out, GrinOptions options) {
+        writer = new BlockWriter(out, options);
+        block = new byte[writer.getBlockSize()];
+    }
+
+    /**
+     * Writes one byte
+     *
+     * @param b the byte to write, in the low 8 bits
+     * @throws IOException if the stream is closed
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            endBlock();
+        }
+    }
+
+    /**
+     * Writes len bytes from buf
+     *
+     * @param buf the bytes to write
+     * @param off the index of the first byte to write
+     * @param len the number of bytes to write
+     * @throws IOException if the stream is closed
+     */
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(buf, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) {
+                endBlock();
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the stream is closed
+     */
+    private void ensureOpen() throws IOException {
+        if (writer == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Hands the current block to the writer and starts a new one
+     */
+    private void endBlock() {
+        writer.writeBlock(block, count);
+        block = new byte[block.length];
+        count = 0;
+    }
+
+    /**
+     * Ends the current block early and writes every block so far to the
+     * underlying stream. Frequent flushes make smaller blocks, which
+     * compress less well.
+     *
+     * @throws IOException if the stream is closed or the underlying stream
+     *                     cannot be flushed
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            endBlock();
+        }
+        writer.flush();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    /**
+     * Writes the last block and the block index, then closes the underlying
+     * stream. Closing a closed stream does nothing.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        if (count > 0) {
+            endBlock();
+        }
+        writer.close();
+        writer = null;
+    }
+}
@@ -0,0 +1,195 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A GrinReader reads byte ranges of the decoded contents of a block .grin
+ * file. It uses the block index to decode only the blocks that overlap the
+ * requested range, so a read costs time proportional to the blocks it
+ * touches rather than to the size of the file.
+ *
+ * A GrinReader is not safe for use by several threads at once.
+ */
+public class GrinReader implements Closeable {
+    private FileChannel channel;
+    private long[] starts;      // decoded offset of each block, plus the total
+    private long[] positions;   // file position of each block
+    private int[] sizes;        // stored size of each block
+
+    private int cachedBlock;    // the block held in cachedData, or -1
+    private byte[] cachedData;
+
+    /**
+     * Constructs a GrinReader for the given file and reads its block index
+     *
+     * @param file the block .grin file to read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a block .grin file
+     */
+    public GrinReader(String file) throws IOException {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        try {
+            readIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        cachedBlock = -1;
+    }
+
+    /**
+     * Reads the trailer and the index it points to
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void readIndex() throws IOException {
+        long size = channel.size();
+        if (size < 8 + 1 + 4 + BlockFormat.TRAILER_SIZE) {
+            throw new IllegalArgumentException("Input file must be a Grin block file");
+        }
+        ByteBuffer trailer = readFully(size - BlockFormat.TRAILER_SIZE,
+                BlockFormat.TRAILER_SIZE);
+        long indexPosition = trailer.getLong();
+        if (trailer.getInt() != BlockFormat.BLOCK_MAGIC
+                || indexPosition < 9 || indexPosition > size - BlockFormat.TRAILER_SIZE - 4) {
+            throw new IllegalArgumentException("Input file must be a Grin block file");
+        }
+
+        ByteBuffer index = readFully(indexPosition,
+                (int) (size - BlockFormat.TRAILER_SIZE - indexPosition));
+        int count = index.getInt();
+        if (index.remaining() != 8L * count) {
+            throw new IllegalArgumentException("Corrupt Grin block index");
+        }
+        starts = new long[count + 1];
+        positions = new long[count];
+        sizes = new int[count];
+        long position = 8;
+        for (int i = 0; i < count; i++) {
+            int len = index.getInt();
+            starts[i + 1] = starts[i] + len;
+            sizes[i] = index.getInt();
+            positions[i] = position;
+            position += sizes[i];
+            if (len < 0 || sizes[i] < BlockFormat.BLOCK_HEADER_SIZE) {
+                throw new IllegalArgumentException("Corrupt Grin block index");
+            }
+        }
+        // the blocks must fill the file up to the END marker
+        if (position + 1 != indexPosition) {
+            throw new IllegalArgumentException("Corrupt Grin block index");
+        }
+    }
+
+    /**
+     * @return the number of bytes in the decoded file
+     */
+    public long length() {
+        return starts[starts.length - 1];
+    }
+
+    /**
+     * Reads up to len decoded bytes starting at the given offset
+     *
+     * @param offset the offset in the decoded file of the first byte to read
+     * @param len    the number of bytes to read
+     * @return the bytes read, fewer than len only if the file ends first
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] read(long offset, int len) throws IOException {
+        if (offset < 0 || len < 0) {
+            throw new IllegalArgumentException("Negative offset or length");
+        }
+        len = (int) Math.max(0, Math.min(len, length() - offset));
+        byte[] result = new byte[len];
+        int done = 0;
+        int block = findBlock(offset);
+        while (done < len) {
+            byte[] data = decodeBlock(block);
+            int from = (int) (offset + done - starts[block]);
+            int n = Math.min(len - done, data.length - from);
+            System.arraycopy(data, from, result, done, n);
+            done += n;
+            block++;
+        }
+        return result;
+    }
+
+    /**
+     * @param offset an offset in the decoded file
+     * @return the block that holds offset
+     */
+    private int findBlock(long offset) {
+        int i = Arrays.binarySearch(starts, offset);
+        if (i < 0) {
+            return -i - 2;
+        }
+        // skip over empty blocks that start at the same offset
+        while (i < sizes.length - 1 && starts[i + 1] == offset) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decodes a block, reusing the last block decoded when possible
+     *
+     * @param block the index of the block
+     * @return the decoded bytes of the block
+     * @throws IOException if the file cannot be read
+     */
+    private byte[] decodeBlock(int block) throws IOException {
+        if (block == cachedBlock) {
+            return cachedData;
+        }
+        ByteBuffer stored = readFully(positions[block], sizes[block]);
+        int type = stored.get() & 0xff;
+        int len = stored.getInt();
+        int payloadLen = stored.getInt();
+        if (len != starts[block + 1] - starts[block] || payloadLen != stored.remaining()) {
+            throw new IllegalArgumentException("Corrupt Grin block file");
+        }
+        byte[] payload = new byte[payloadLen];
+        stored.get(payload);
+        byte[] data = new byte[len];
+        BlockFormat.decodeBlock(type, payload, data, len);
+        cachedBlock = block;
+        cachedData = data;
+        return data;
+    }
+
+    /**
+     * Reads len bytes of the file starting at position
+     *
+     * @param position the file position of the first byte
+     * @param len      the number of bytes to read
+     * @return a buffer holding the bytes, ready to be read
+     * @throws IOException if the file cannot be read
+     */
+    private ByteBuffer readFully(long position, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IllegalArgumentException("Truncated Grin block file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Closes the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,103 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GrinStats adds up what a GrinListener is told and formats it as a
+ * report, which is what --stats prints. Phase times and sizes are summed
+ * over every file and block; the symbol count and depth are the largest of
+ * any tree. Costs are reported as the extra bits over the optimal bits,
+ * both summed over every file. Files written as stored blocks are listed
+ * so that the caller can say so.
+ */
+public class GrinStats implements GrinListener {
+    private Map<String, Long> phases;   // total nanoseconds, in first-seen order
+    private long rawBytes;
+    private long grinBytes;
+    private int trees;
+    private int maxSymbols;
+    private int maxDepth;
+    private Map<String, long[]> costs;  // bits and optimal bits of each cost
+    private List<String> storedFiles;
+
+    /**
+     * Constructs empty statistics
+     */
+    public GrinStats() {
+        phases = new LinkedHashMap<>();
+        costs = new LinkedHashMap<>();
+        storedFiles = new ArrayList<>();
+    }
+
+    @Override
+    public synchronized void phase(String name, long nanos) {
+        phases.merge(name, nanos, Long::sum);
+    }
+
+    @Override
+    public synchronized void tree(int symbols, int depth) {
+        trees++;
+        maxSymbols = Math.max(maxSymbols, symbols);
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public synchronized void file(long rawBytes, long grinBytes) {
+        this.rawBytes += rawBytes;
+        this.grinBytes += grinBytes;
+    }
+
+    @Override
+    public synchronized void cost(String name, long bits, long optimalBits) {
+        long[] total = costs.computeIfAbsent(name, k -> new long[2]);
+        total[0] += bits;
+        total[1] += optimalBits;
+    }
+
+    @Override
+    public synchronized void stored(String file) {
+        storedFiles.add(file);
+    }
+
+    /**
+     * @return the files written as stored blocks, in the order they were
+     *         reported
+     */
+    public synchronized List<String> getStoredFiles() {
+        return new ArrayList<>(storedFiles);
+    }
+
+    /**
+     * @return the report, one statistic per line
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            report.append(String.format("%-10s %10.3f ms%n", phase.getKey(),
+                    phase.getValue() / 1e6));
+        }
+        report.append(String.format("%-10s %10d bytes%n", "raw", rawBytes));
+        report.append(String.format("%-10s %10d bytes%n", "grin", grinBytes));
+        if (rawBytes > 0) {
+            report.append(String.format("%-10s %10.3f%n", "bits/byte", 8.0 * grinBytes / rawBytes));
+        }
+        if (trees > 0) {
+            report.append(String.format("%-10s %10d%n", "trees", trees));
+            report.append(String.format("%-10s %10d%n", "symbols", maxSymbols));
+            report.append(String.format("%-10s %10d bits%n", "depth", maxDepth));
+        }
+        for (Map.Entry<String, long[]> cost : costs.entrySet()) {
+            long[] total = cost.getValue();
+            report.append(String.format("%-10s %10.3f%% over optimal%n", cost.getKey(),
+                    total[1] == 0 ? 0.0 : 100.0 * (total[0] - total[1]) / total[1]));
+        }
+        if (!storedFiles.isEmpty()) {
+            report.append(String.format("%-10s %10d files%n", "stored", storedFiles.size()));
+        }
+        return report.toString();
+    }
+}
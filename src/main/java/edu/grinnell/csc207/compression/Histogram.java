@@ -0,0 +1,347 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A Histogram counts how many times each byte value occurs in some data.
+ */
+public class Histogram {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // a sample reads at least this many chunks, however small it is
+    private static final int MIN_SAMPLE_CHUNKS = 8;
+
+    // no parallel task counts a range smaller than this
+    private static final long PARALLEL_THRESHOLD = 1L << 24;
+
+    private long[] counts;
+
+    // four interleaved tables so that runs of the same byte do not stall on
+    // a single counter, merged into counts after every chunk
+    private int[] stripes;
+
+    /**
+     * Constructs an empty Histogram
+     */
+    public Histogram() {
+        counts = new long[256];
+        stripes = new int[4 * 256];
+    }
+
+    /**
+     * Counts the bytes of the given file
+     *
+     * @param file the file to read
+     * @return a histogram of the bytes in file
+     * @throws IOException if the file cannot be read
+     */
+    public static Histogram of(String file) throws IOException {
+        Histogram histogram = new Histogram();
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            histogram.addAll(in);
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts the bytes of the given file by mapping it into memory one
+     * window at a time and counting straight out of the mappings
+     *
+     * @param file the file to read
+     * @return a histogram of the bytes in file
+     * @throws IOException if the file cannot be read or mapped
+     */
+    public static Histogram ofMapped(String file) throws IOException {
+        Histogram histogram = new Histogram();
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += BitInputStream.MAP_WINDOW) {
+                histogram.add(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(BitInputStream.MAP_WINDOW, size - pos)));
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts chunks of the given file spread evenly across it, so that a
+     * tree can be built without reading the whole file. A small sample is
+     * split into shorter chunks rather than read from the head of the
+     * file, so it still sees every part of it. Every byte value is
+     * counted once more than in the sample, so a tree built from the counts
+     * can code bytes the sample missed. A file no larger than sampleSize is
+     * counted whole, and exactly.
+     *
+     * @param file       the file to read
+     * @param sampleSize about the most bytes to read
+     * @return a histogram of the sampled bytes
+     * @throws IOException if the file cannot be read
+     */
+    public static Histogram sample(String file, long sampleSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= sampleSize) {
+                return of(file);
+            }
+            Histogram histogram = new Histogram();
+            long chunks = Math.max(MIN_SAMPLE_CHUNKS, (sampleSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            int chunkSize = (int) Math.max(1, sampleSize / chunks);
+            long stride = size / chunks;
+            ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+            for (long i = 0; i < chunks; i++) {
+                long pos = i * stride;
+                buf.clear();
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, pos + buf.position()) < 0) {
+                        break;
+                    }
+                }
+                histogram.add(buf.array(), 0, buf.position());
+            }
+            histogram.smooth();
+            return histogram;
+        }
+    }
+
+    /**
+     * Counts the bytes of the given file, splitting large files into ranges
+     * that are counted on the common ForkJoinPool and merged. Files too
+     * small to split are counted on the calling thread.
+     *
+     * @param file the file to read
+     * @return a histogram of the bytes in file
+     * @throws IOException if the file cannot be read
+     */
+    public static Histogram ofParallel(String file) throws IOException {
+        return ofParallel(file, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Counts the bytes of the given file as ofParallel(file) does, with
+     * the given smallest range a task counts, so that tests can split
+     * small files
+     *
+     * @param file      the file to read
+     * @param threshold no task counts a range smaller than this
+     * @return a histogram of the bytes in file
+     * @throws IOException if the file cannot be read
+     */
+    static Histogram ofParallel(String file, long threshold) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2 * threshold) {
+                return of(file);
+            }
+            return ForkJoinPool.commonPool().invoke(new CountTask(channel, 0, size, threshold));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Counts a range of a file, splitting it in half until the ranges are
+     * small enough to count directly.
+     */
+    private static class CountTask extends RecursiveTask<Histogram> {
+        private static final long serialVersionUID = 1L;
+
+        private transient FileChannel channel;
+        private long start;
+        private long end;
+        private long threshold;
+
+        /**
+         * @param channel   the file to read, shared by all tasks
+         * @param start     the position of the first byte to count
+         * @param end       the position after the last byte to count
+         * @param threshold no task counts a range smaller than this
+         */
+        CountTask(FileChannel channel, long start, long end, long threshold) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Histogram compute() {
+            if (end - start < 2 * threshold) {
+                return countRange();
+            }
+            long mid = start + (end - start) / 2;
+            CountTask right = new CountTask(channel, mid, end, threshold);
+            right.fork();
+            Histogram histogram = new CountTask(channel, start, mid, threshold).compute();
+            histogram.addAll(right.join());
+            return histogram;
+        }
+
+        /**
+         * @return a histogram of the bytes between start and end
+         */
+        private Histogram countRange() {
+            Histogram histogram = new Histogram();
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long pos = start;
+            try {
+                while (pos < end) {
+                    chunk.clear();
+                    chunk.limit((int) Math.min(CHUNK_SIZE, end - pos));
+                    int read = channel.read(chunk, pos);
+                    if (read == -1) {
+                        break;
+                    }
+                    histogram.add(chunk.array(), 0, read);
+                    pos += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Counts every remaining byte of the given stream
+     *
+     * @param in the stream to read
+     * @throws IOException if the stream cannot be read
+     */
+    public void addAll(InputStream in) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int read = in.read(chunk);
+        while (read != -1) {
+            add(chunk, 0, read);
+            read = in.read(chunk);
+        }
+    }
+
+    /**
+     * Counts the bytes buf[off] through buf[off + len - 1]
+     *
+     * @param buf the bytes to count
+     * @param off the index of the first byte to count
+     * @param len the number of bytes to count
+     */
+    public void add(byte[] buf, int off, int len) {
+        int[] s = stripes;
+        int i = off;
+        int end = off + len;
+        for (; i + 3 < end; i += 4) {
+            s[buf[i] & 0xff]++;
+            s[256 + (buf[i + 1] & 0xff)]++;
+            s[512 + (buf[i + 2] & 0xff)]++;
+            s[768 + (buf[i + 3] & 0xff)]++;
+        }
+        for (; i < end; i++) {
+            s[buf[i] & 0xff]++;
+        }
+        mergeStripes();
+    }
+
+    /**
+     * Counts the remaining bytes of buf without copying them out of it and
+     * leaves its position unchanged
+     *
+     * @param buf the bytes to count
+     */
+    public void add(ByteBuffer buf) {
+        int[] s = stripes;
+        int end = buf.limit();
+        int i = buf.position();
+        while (i < end) {
+            // merge often enough that no stripe can overflow
+            int stop = (int) Math.min(end, i + (long) CHUNK_SIZE * 1024);
+            for (; i + 3 < stop; i += 4) {
+                s[buf.get(i) & 0xff]++;
+                s[256 + (buf.get(i + 1) & 0xff)]++;
+                s[512 + (buf.get(i + 2) & 0xff)]++;
+                s[768 + (buf.get(i + 3) & 0xff)]++;
+            }
+            for (; i < stop; i++) {
+                s[buf.get(i) & 0xff]++;
+            }
+            mergeStripes();
+        }
+    }
+
+    /**
+     * Adds the striped counts into counts and clears the stripes
+     */
+    private void mergeStripes() {
+        for (int b = 0; b < 256; b++) {
+            counts[b] += (long) stripes[b] + stripes[256 + b]
+                    + stripes[512 + b] + stripes[768 + b];
+            stripes[b] = 0;
+            stripes[256 + b] = 0;
+            stripes[512 + b] = 0;
+            stripes[768 + b] = 0;
+        }
+    }
+
+    /**
+     * Counts the byte value b n more times
+     *
+     * @param b a byte value (0--255)
+     * @param n the number of times to count it
+     */
+    public void add(int b, long n) {
+        counts[b] += n;
+    }
+
+    /**
+     * Counts every byte value once more, so that a tree built from these
+     * counts gives every byte a code
+     */
+    public void smooth() {
+        for (int b = 0; b < 256; b++) {
+            counts[b]++;
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram to this one
+     *
+     * @param other the histogram to add
+     */
+    public void addAll(Histogram other) {
+        for (int b = 0; b < 256; b++) {
+            counts[b] += other.counts[b];
+        }
+    }
+
+    /**
+     * @param b a byte value (0--255)
+     * @return the number of times b was counted
+     */
+    public long count(int b) {
+        return counts[b];
+    }
+
+    /**
+     * @return the number of bytes counted
+     */
+    public long total() {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * @return a copy of the counts, indexed by byte value
+     */
+    public long[] toArray() {
+        return counts.clone();
+    }
+}
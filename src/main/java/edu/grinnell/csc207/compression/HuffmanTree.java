@@ -1,10 +1,7 @@
 package edu.grinnell.csc207.compression;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Stack;
 
 /**
  * A HuffmanTree derives a space-efficient coding of a collection of byte
@@ -17,12 +14,53 @@ import java.util.Stack;
  * byte chunks to the file), but Java does not have a 9-bit data type.
  * Instead, we use the next larger primitive integral type, short, to store
  * our byte values.
+ *
+ * The tree is stored as parallel arrays indexed by internal node: left[i]
+ * and right[i] hold the children of node i. A child that is another
+ * internal node is its index; a child that is a leaf is stored as ~symbol,
+ * which is always negative. The root is stored the same way, so a tree
+ * with a single symbol has a leaf as its root.
  */
 public class HuffmanTree {
 
-    BinaryTree huffTree;
+    // the bytes, EOF (256), and the symbols after EOF that block coders
+    // may add; the block format fixes how many there can be
+    private static final int NUM_SYMBOLS = BlockFormat.MAX_SYMBOLS;
+
+    // number of bits resolved by a single lookup in the decode table
+    private static final int TABLE_BITS = 11;
+
+    // number of bits looked at by one lookup in the multi-symbol table
+    private static final int MULTI_BITS = 12;
+
+    // most symbols held by one entry of the multi-symbol table
+    private static final int MULTI_SYMBOLS = 3;
+
+    // bytes decoded between bulk writes to the output
+    private static final int DECODE_BUFFER_SIZE = 1 << 16;
 
-    PriorityQueue<QNode> priorQ;
+    // the tree, see the class comment; left is null for canonical codes
+    // until the tree is needed
+    private short[] left;
+    private short[] right;
+    private int root;
+
+    // code of each symbol packed into the low bits, msb first
+    private long[] codes;
+    private int[] codeLengths;
+    private boolean canonical;
+
+    // decode table indexed by the next TABLE_BITS bits: symbol << 8 | length,
+    // or -1 when the code is longer and decoding continues from the internal
+    // node in tableNodes
+    private int[] decodeTable;
+    private short[] tableNodes;
+
+    // multi-symbol table indexed by the next MULTI_BITS bits: up to three
+    // whole bytes in bits 8--31, first byte lowest, their number in bits
+    // 5--6 and the bits they take in bits 0--4; built on the first bulk
+    // decode
+    private int[] multiTable;
 
     /**
      * Constructs a new HuffmanTree from a frequency map.
@@ -30,72 +68,588 @@ public class HuffmanTree {
      * @param freqs a map from 9-bit values to frequencies.
      */
     public HuffmanTree(Map<Short, Integer> freqs) {
-        TreeNode cur = null;
-        priorQ = new PriorityQueue<>();
-        huffTree = new BinaryTree();
-        // add all characters from map
+        this(toCounts(freqs));
+    }
+
+    /**
+     * Constructs a new HuffmanTree from a histogram of byte values.
+     * 
+     * @param freqs the number of times each byte value occurs
+     */
+    public HuffmanTree(Histogram freqs) {
+        this(freqs.toArray());
+    }
+
+    /**
+     * Constructs a new HuffmanTree whose codes are at most maxLength bits
+     * long. The optimal code lengths are computed first; if any is longer
+     * than maxLength, the longest codes are shortened by the rebalancing
+     * heuristic of JPEG (ITU T.81, K.3) and the lengths are handed back out
+     * so the most frequent symbols get the shortest codes. The codes are
+     * canonical. A limit of TABLE_BITS or less makes every code decode with
+     * a single table lookup.
+     * 
+     * @param freqs     the number of times each byte value occurs
+     * @param maxLength the longest code allowed, in bits
+     * @throws IllegalArgumentException if maxLength bits cannot give every
+     *                                  symbol a code
+     */
+    public HuffmanTree(Histogram freqs, int maxLength) {
+        this(limitLengths(freqs.toArray(), maxLength));
+    }
+
+    /**
+     * Computes code lengths no longer than maxLength for the given counts
+     * 
+     * @param counts    the count of each symbol, EOF's ignored
+     * @param maxLength the longest code allowed, in bits
+     * @return the code length of each symbol, EOF included
+     */
+    private static int[] limitLengths(long[] counts, int maxLength) {
+        int[] lengths = new HuffmanTree(counts).toCanonical().codeLengths;
+        int longest = 0;
+        int symbols = 0;
+        for (int length : lengths) {
+            longest = Math.max(longest, length);
+            symbols += length > 0 ? 1 : 0;
+        }
+        if (maxLength < 1 || maxLength >= Long.SIZE) {
+            throw new IllegalArgumentException("Code length limit out of range: " + maxLength);
+        }
+        if (symbols > (1L << maxLength)) {
+            throw new IllegalArgumentException("Cannot code " + symbols
+                    + " symbols in at most " + maxLength + " bits");
+        }
+        if (longest <= maxLength) {
+            return lengths;
+        }
+
+        // number of codes of each length
+        int[] bits = new int[longest + 1];
+        for (int length : lengths) {
+            if (length > 0) {
+                bits[length]++;
+            }
+        }
+        for (int i = longest; i > maxLength; i--) {
+            while (bits[i] > 0) {
+                // move two leaves of length i up: one takes their parent's
+                // place, the other pairs with a leaf moved down from length j
+                int j = i - 2;
+                while (bits[j] == 0) {
+                    j--;
+                }
+                bits[i] -= 2;
+                bits[i - 1]++;
+                bits[j + 1] += 2;
+                bits[j]--;
+            }
+        }
+
+        // hand the lengths back out, shortest to the most frequent symbol
+        Integer[] order = new Integer[symbols];
+        int n = 0;
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            if (lengths[sym] > 0) {
+                order[n++] = sym;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(countOf(counts, b), countOf(counts, a)));
+        int[] limited = new int[NUM_SYMBOLS];
+        int length = 1;
+        for (int i = 0; i < symbols; i++) {
+            while (bits[length] == 0) {
+                length++;
+            }
+            limited[order[i]] = length;
+            bits[length]--;
+        }
+        return limited;
+    }
+
+    /**
+     * @param counts the count of each symbol, EOF's ignored
+     * @param sym    a symbol
+     * @return the count of sym, where EOF occurs once
+     */
+    private static long countOf(long[] counts, int sym) {
+        return sym == 256 || sym >= counts.length ? 1 : counts[sym];
+    }
+
+    /**
+     * Constructs the canonical codes of symbols beyond the bytes, for
+     * coders such as RunLength that extend the alphabet past EOF, and for
+     * the distances of Lz77.
+     * 
+     * These blocks know their length, so EOF is never written, but it keeps
+     * a code anyway. It makes every alphabet hold at least one symbol, so a
+     * block without matches still has a distance code that
+     * writeCodeLengths and readCodeLengths can describe, and a tree needs
+     * no special case for an empty alphabet. Its count of 1 gives it the
+     * longest code, which lengthens at most one other code by a bit; the
+     * header spends a gamma-coded gap on it.
+     * 
+     * @param counts    the count of each symbol; the count of EOF is
+     *                  ignored, as EOF always has a code
+     * @param maxLength the longest code allowed in bits, or 0 for no limit
+     * @return the canonical HuffmanTree
+     * @throws IllegalArgumentException if there are more symbols than
+     *                                  BlockFormat.MAX_SYMBOLS
+     */
+    static HuffmanTree ofSymbols(long[] counts, int maxLength) {
+        if (counts.length > NUM_SYMBOLS) {
+            throw new IllegalArgumentException("Too many symbols: " + counts.length);
+        }
+        HuffmanTree tree = maxLength > 0 ? new HuffmanTree(limitLengths(counts, maxLength))
+                : new HuffmanTree(counts);
+        return tree.toCanonical();
+    }
+
+    /**
+     * @return the number of symbols with codes, EOF included
+     */
+    public int getSymbolCount() {
+        int symbols = 0;
+        for (int length : codeLengths) {
+            symbols += length > 0 ? 1 : 0;
+        }
+        return Math.max(symbols, 1);
+    }
+
+    /**
+     * @return the length of the longest code, in bits
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (int length : codeLengths) {
+            depth = Math.max(depth, length);
+        }
+        return depth;
+    }
+
+    /**
+     * Computes how many bits the codes of this tree take for the given
+     * counts, not counting the header
+     * 
+     * @param freqs the number of times each byte value occurs
+     * @return the number of bits, EOF included
+     */
+    public long encodedBits(Histogram freqs) {
+        long total = codeLengths[256];
+        for (int b = 0; b < 256; b++) {
+            total += freqs.count(b) * codeLengths[b];
+        }
+        return total;
+    }
+
+    /**
+     * Computes how many bits the codes of this tree take for the given
+     * symbol counts, not counting the header
+     * 
+     * @param counts the count of each symbol, EOF's ignored
+     * @return the number of bits, EOF included
+     */
+    public long encodedBits(long[] counts) {
+        long total = codeLengths[256];
+        for (int sym = 0; sym < counts.length; sym++) {
+            if (sym != 256) {
+                total += counts[sym] * codeLengths[sym];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of bits serialize writes: a bit for each internal
+     *         node, and a bit and a 9-bit symbol for each leaf
+     */
+    public long serializedBits() {
+        // a lone symbol is written as a tree of two leaves
+        int leaves = left != null && root < 0 ? 1 : Math.max(getSymbolCount(), 2);
+        return 10L * leaves + leaves - 1;
+    }
+
+    /**
+     * @return the number of bits writeCodeLengths writes
+     */
+    public long codeLengthBits() {
+        int width = 32 - Integer.numberOfLeadingZeros(getDepth());
+        long total = 12;
+        int prev = -1;
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            if (codeLengths[sym] > 0) {
+                int gapBits = 32 - Integer.numberOfLeadingZeros(sym - prev);
+                total += 2 * gapBits - 1 + width;
+                prev = sym;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Converts a frequency map into an array of counts indexed by byte value
+     * 
+     * @param freqs a map from 9-bit values to frequencies.
+     * @return the count of each byte value 0--255
+     */
+    private static long[] toCounts(Map<Short, Integer> freqs) {
+        long[] counts = new long[256];
         for (int i = 0; i < 256; i++) {
             if (freqs.get((short) i) != null) {
-                priorQ.add(new QNode((short) i, freqs.get((short) i), null));
+                counts[i] = freqs.get((short) i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Constructs a new HuffmanTree from the counts of each byte value. The
+     * symbols are sorted by count once, and the tree is then built in
+     * linear time with two queues: the sorted leaves, and the internal
+     * nodes, which are created in order of increasing weight.
+     * 
+     * @param counts the count of each byte value 0--255, and optionally of
+     *               the run symbols after EOF; the count of EOF is ignored
+     */
+    private HuffmanTree(long[] counts) {
+        // sort key: count in the high bits, symbol in the low 9 bits
+        long[] leaves = new long[NUM_SYMBOLS];
+        int numLeaves = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && i != 256) {
+                if (counts[i] >= 1L << 54) {
+                    throw new IllegalArgumentException("Count too large: " + counts[i]);
+                }
+                leaves[numLeaves++] = counts[i] << 9 | i;
             }
         }
         // add EOF char
-        priorQ.add(new QNode((short) 256, 1, null));
+        leaves[numLeaves++] = 1L << 9 | 256;
+        Arrays.sort(leaves, 0, numLeaves);
 
-        int offset = 0;
-        TreeNode left, right;
+        left = new short[numLeaves - 1];
+        right = new short[numLeaves - 1];
+        long[] weights = new long[numLeaves - 1];
+        int nextLeaf = 0;
+        int nextNode = 0;
+        for (int node = 0; node < numLeaves - 1; node++) {
+            for (int child = 0; child < 2; child++) {
+                int picked;
+                long weight;
+                if (nextLeaf < numLeaves
+                        && (nextNode == node || leaves[nextLeaf] >>> 9 <= weights[nextNode])) {
+                    picked = ~(int) (leaves[nextLeaf] & 0x1ff);
+                    weight = leaves[nextLeaf++] >>> 9;
+                } else {
+                    picked = nextNode;
+                    weight = weights[nextNode++];
+                }
+                if (child == 0) {
+                    left[node] = (short) picked;
+                } else {
+                    right[node] = (short) picked;
+                }
+                weights[node] += weight;
+            }
+        }
+        // only EOF present (empty input), so the root is a lone leaf
+        root = numLeaves == 1 ? ~(int) (leaves[0] & 0x1ff) : numLeaves - 2;
+        buildCodeTable();
+    }
 
-        // create tree
-        while (priorQ.size() > 1) {
-            int bitVal = 1;
-            if (priorQ.peek().getCharacter() < 257) {
-                bitVal = 0;
+    /**
+     * Fills the code table by walking the tree once so that encoding never
+     * has to search the tree for a symbol.
+     */
+    private void buildCodeTable() {
+        codes = new long[NUM_SYMBOLS];
+        codeLengths = new int[NUM_SYMBOLS];
+        if (root < 0) {
+            return;
+        }
+        // depth-first walk over internal nodes, children found from parents
+        int[] stack = new int[left.length + 1];
+        long[] stackCodes = new long[left.length + 1];
+        int[] stackLengths = new int[left.length + 1];
+        stack[0] = root;
+        int top = 1;
+        while (top > 0) {
+            top--;
+            int node = stack[top];
+            long code = stackCodes[top];
+            int length = stackLengths[top] + 1;
+            if (length > Long.SIZE) {
+                throw new IllegalStateException("Huffman code longer than 64 bits");
             }
-            if (priorQ.peek().gettNode() != null) {
-                left = priorQ.peek().gettNode();
-            } else {
-                left = new TreeNode(bitVal, priorQ.peek().getCharacter());
+            for (int bit = 0; bit < 2; bit++) {
+                int child = bit == 0 ? left[node] : right[node];
+                if (child < 0) {
+                    codes[~child] = code << 1 | bit;
+                    codeLengths[~child] = length;
+                } else {
+                    stack[top] = child;
+                    stackCodes[top] = code << 1 | bit;
+                    stackLengths[top] = length;
+                    top++;
+                }
             }
-            int freq1 = priorQ.remove().getAmount();
-            if (priorQ.peek().getCharacter() < 257) {
-                bitVal = 0;
+        }
+    }
+
+    /**
+     * Constructs a new HuffmanTree with canonical codes of the given lengths.
+     * Codes are handed out in order of length and then symbol, so the
+     * lengths alone determine every code. The tree arrays are only built if
+     * they are needed, for codes longer than the decode table or to
+     * serialize the tree.
+     * 
+     * @param lengths the code length of each symbol, 0 for absent symbols
+     * @throws IllegalArgumentException if no complete prefix code has these
+     *                                  lengths
+     */
+    private HuffmanTree(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        if (maxLength >= Long.SIZE) {
+            throw new IllegalArgumentException("Invalid Huffman code lengths");
+        }
+        int[] lengthCount = new int[maxLength + 1];
+        for (int length : lengths) {
+            if (length > 0) {
+                lengthCount[length]++;
             }
-            if (priorQ.peek().gettNode() != null) {
-                right = priorQ.peek().gettNode();
-            } else {
-                right = new TreeNode(bitVal, priorQ.peek().getCharacter());
+        }
+        long[] nextCode = new long[maxLength + 1];
+        long code = 0;
+        for (int len = 1; len <= maxLength; len++) {
+            code <<= 1;
+            nextCode[len] = code;
+            code += lengthCount[len];
+            if (code > (1L << len)) {
+                throw new IllegalArgumentException("Invalid Huffman code lengths");
             }
-            int freq2 = priorQ.remove().getAmount();
-            cur = new TreeNode(1, (short) (300 + offset));
-            cur.setLeft(left);
-            cur.setRight(right);
-            priorQ.add(new QNode((short) (300 + offset), freq1 + freq2, cur));
-            offset += 1;
         }
-        huffTree.setRoot(cur);
+        // a code with gaps would leave decode table slots that match no
+        // symbol; only a lone symbol leaves its sibling unused
+        if (code != 1L << maxLength && !(maxLength == 1 && code == 1)) {
+            throw new IllegalArgumentException("Invalid Huffman code lengths");
+        }
+        codes = new long[NUM_SYMBOLS];
+        codeLengths = lengths.clone();
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            if (lengths[sym] > 0) {
+                codes[sym] = nextCode[lengths[sym]]++;
+            }
+        }
+        canonical = true;
     }
 
     /**
-     * Helper that helps construct tree
+     * Returns a HuffmanTree with canonical codes of the same lengths as this
+     * tree's codes, which compresses exactly as well but can be stored as
+     * code lengths alone.
      * 
-     * @param in  the InputStream used to read in bit information
-     * @param cur the current TreeNode
-     * @return the TreeNode needed based on inputStream
+     * @return the canonical version of this tree
      */
-    private TreeNode constructH(BitInputStream in, TreeNode cur) {
-        int nextBit;
-        nextBit = in.readBit();
-        TreeNode input;
-        if (nextBit == 1) {
-            input = new TreeNode(nextBit, (short) 300);
-            input.setLeft(constructH(in, input.getLeft()));
-            input.setRight(constructH(in, input.getRight()));
-            ;
-        } else {
-            input = new TreeNode(nextBit, (short) in.readBits(9));
+    public HuffmanTree toCanonical() {
+        int[] lengths = codeLengths.clone();
+        if (left != null && root < 0) {
+            // a lone symbol still needs a 1-bit code to be listed
+            lengths[~root] = 1;
         }
-        return input;
+        return new HuffmanTree(lengths);
+    }
 
+    /**
+     * Writes the code length of every symbol, which is all a reader needs to
+     * rebuild canonical codes. The header is the width of a length (3 bits),
+     * the number of symbols with codes (9 bits), and then for each of those
+     * symbols in order the gap from the previous one as an Elias gamma code
+     * and its length.
+     * 
+     * @param out the output stream the header is written to
+     * @throws IllegalStateException if the codes are not canonical
+     */
+    public void writeCodeLengths(BitOutputStream out) {
+        if (!canonical) {
+            throw new IllegalStateException("Only canonical codes can be written as lengths");
+        }
+        int maxLength = 0;
+        int count = 0;
+        for (int length : codeLengths) {
+            maxLength = Math.max(maxLength, length);
+            count += length > 0 ? 1 : 0;
+        }
+        int width = 32 - Integer.numberOfLeadingZeros(maxLength);
+        out.writeBits(width, 3);
+        out.writeBits(count, 9);
+        int prev = -1;
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            if (codeLengths[sym] > 0) {
+                int gap = sym - prev;
+                int gapBits = 32 - Integer.numberOfLeadingZeros(gap);
+                out.writeBits(gap, 2 * gapBits - 1);
+                out.writeBits(codeLengths[sym], width);
+                prev = sym;
+            }
+        }
+    }
+
+    /**
+     * Reads a header written by writeCodeLengths and builds the canonical
+     * codes it describes.
+     * 
+     * @param in the stream positioned at the header
+     * @return the canonical HuffmanTree
+     * @throws IllegalArgumentException if the header is malformed
+     */
+    public static HuffmanTree readCodeLengths(BitInputStream in) {
+        int width = in.readBits(3);
+        int count = in.readBits(9);
+        int[] lengths = new int[NUM_SYMBOLS];
+        int sym = -1;
+        for (int i = 0; i < count; i++) {
+            int zeros = 0;
+            while (in.readBit() == 0) {
+                zeros++;
+            }
+            if (zeros > 9) {
+                throw new IllegalArgumentException("Corrupt Huffman code lengths");
+            }
+            sym += (1 << zeros) | in.readBits(zeros);
+            if (sym >= NUM_SYMBOLS) {
+                throw new IllegalArgumentException("Corrupt Huffman code lengths");
+            }
+            lengths[sym] = in.readBits(width);
+        }
+        return new HuffmanTree(lengths);
+    }
+
+    /**
+     * Builds the tree arrays of canonical codes by following each code from
+     * the root. A child no code reaches, which only happens when a single
+     * symbol has a code, gets a placeholder leaf so the tree can be
+     * serialized.
+     */
+    private void buildTreeFromCodes() {
+        int symbols = 0;
+        for (int length : codeLengths) {
+            symbols += length > 0 ? 1 : 0;
+        }
+        int size = Math.max(symbols - 1, 1);
+        left = new short[size];
+        right = new short[size];
+        Arrays.fill(left, Short.MIN_VALUE);
+        Arrays.fill(right, Short.MIN_VALUE);
+        int nodes = 1;
+        root = 0;
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            int node = 0;
+            for (int i = codeLengths[sym] - 1; i >= 0; i--) {
+                short[] side = ((codes[sym] >>> i) & 1) == 1 ? right : left;
+                if (i == 0) {
+                    side[node] = (short) ~sym;
+                } else {
+                    if (side[node] == Short.MIN_VALUE) {
+                        side[node] = (short) nodes++;
+                    }
+                    node = side[node];
+                }
+            }
+        }
+        if (right[0] == Short.MIN_VALUE) {
+            right[0] = ~0;
+        }
+    }
+
+    /**
+     * Builds the decode table now instead of on the first decode. A tree
+     * that is shared by several decoding threads must be prepared first,
+     * because building the table is not thread-safe.
+     */
+    public void prepareDecoding() {
+        if (multiTable == null) {
+            buildMultiTable();
+        }
+    }
+
+    /**
+     * Builds only the single-symbol decode table, for callers that decode
+     * one symbol at a time with decodeSymbol.
+     */
+    void prepareSymbolDecoding() {
+        if (decodeTable == null) {
+            buildDecodeTable();
+        }
+    }
+
+    /**
+     * Fills the decode table so that a symbol whose code fits in TABLE_BITS
+     * bits is found with one lookup instead of one tree step per bit.
+     */
+    private void buildDecodeTable() {
+        decodeTable = new int[1 << TABLE_BITS];
+        tableNodes = new short[1 << TABLE_BITS];
+        for (int sym = 0; sym < NUM_SYMBOLS; sym++) {
+            int length = codeLengths[sym];
+            if (length > TABLE_BITS) {
+                if (left == null) {
+                    buildTreeFromCodes();
+                }
+                // the first TABLE_BITS bits lead to an internal node
+                int prefix = (int) (codes[sym] >>> (length - TABLE_BITS));
+                if (decodeTable[prefix] != -1) {
+                    int node = root;
+                    for (int i = TABLE_BITS - 1; i >= 0; i--) {
+                        node = ((prefix >>> i) & 1) == 0 ? left[node] : right[node];
+                    }
+                    decodeTable[prefix] = -1;
+                    tableNodes[prefix] = (short) node;
+                }
+            } else if (length > 0 || (root < 0 && sym == ~root)) {
+                int first = (int) codes[sym] << (TABLE_BITS - length);
+                int last = first + (1 << (TABLE_BITS - length));
+                for (int i = first; i < last; i++) {
+                    decodeTable[i] = (sym << 8) | length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the multi-symbol table. Each MULTI_BITS-bit index holds as many
+     * whole codes of bytes as fit in it, up to MULTI_SYMBOLS, so that short
+     * codes are decoded several at a time. An entry holding no symbols
+     * means the first code is not a byte's or is longer than the index,
+     * and is decoded one symbol at a time instead.
+     */
+    private void buildMultiTable() {
+        if (decodeTable == null) {
+            buildDecodeTable();
+        }
+        int[] table = new int[1 << MULTI_BITS];
+        for (int index = 0; index < table.length; index++) {
+            int used = 0;
+            int count = 0;
+            int entry = 0;
+            while (count < MULTI_SYMBOLS) {
+                // the next TABLE_BITS bits after the used ones, 0-padded
+                int window = (index << used) & ((1 << MULTI_BITS) - 1);
+                int single = decodeTable[window >>> (MULTI_BITS - TABLE_BITS)];
+                int length = single & 0xff;
+                if (single < 0 || length == 0 || used + length > MULTI_BITS
+                        || single >>> 8 >= 256) {
+                    break;
+                }
+                entry |= (single >>> 8) << (8 + 8 * count);
+                used += length;
+                count++;
+            }
+            table[index] = entry | count << 5 | used;
+        }
+        multiTable = table;
     }
 
     /**
@@ -104,26 +658,74 @@ public class HuffmanTree {
      * @param in the input file (as a BitInputStream)
      */
     public HuffmanTree(BitInputStream in) {
-        checkForGrin(in);
-        huffTree = new BinaryTree();
-        huffTree.setRoot(constructH(in, huffTree.getRoot()));
+        this(in, true);
     }
 
     /**
-     * Helper that writes tree as bits
+     * Constructs a new HuffmanTree from a serialized tree, optionally
+     * preceded by the Grin magic number. The tree is serialized in pre-order,
+     * a 1 for each internal node and a 0 and 9-bit symbol for each leaf.
      * 
-     * @param out the output stream that bits are being written to
-     * @param cur the current TreeNode
+     * @param in         the input file (as a BitInputStream)
+     * @param grinHeader true iff the magic number comes first
+     * @throws IllegalArgumentException if the tree is malformed
      */
-    private void serializeH(BitOutputStream out, TreeNode cur) {
-        if (cur != null && cur.getBit() == 1) {
-            out.writeBit(cur.getBit());
-            serializeH(out, cur.getLeft());
-            serializeH(out, cur.getRight());
-        } else if (cur != null) {
-            out.writeBit(cur.getBit());
-            out.writeBits(cur.getCharacter(), 9);
+    private HuffmanTree(BitInputStream in, boolean grinHeader) {
+        if (grinHeader) {
+            checkForGrin(in);
         }
+        left = new short[NUM_SYMBOLS - 1];
+        right = new short[NUM_SYMBOLS - 1];
+        // internal nodes still missing a child, deepest last
+        int[] open = new int[NUM_SYMBOLS];
+        int top = 0;
+        int nodes = 0;
+        boolean first = true;
+        while (first || top > 0) {
+            int bit = in.readBit();
+            int child;
+            if (bit == 1) {
+                if (nodes == left.length) {
+                    throw new IllegalArgumentException("Corrupt Huffman tree");
+                }
+                child = nodes;
+                left[nodes] = Short.MIN_VALUE;
+                nodes++;
+            } else if (bit == 0) {
+                int sym = in.readBits(9);
+                if (sym < 0 || sym >= NUM_SYMBOLS) {
+                    throw new IllegalArgumentException("Corrupt Huffman tree");
+                }
+                child = ~sym;
+            } else {
+                throw new IllegalArgumentException("Truncated Huffman tree");
+            }
+
+            if (first) {
+                root = child;
+                first = false;
+            } else if (left[open[top - 1]] == Short.MIN_VALUE) {
+                left[open[top - 1]] = (short) child;
+            } else {
+                right[open[top - 1]] = (short) child;
+                top--;
+            }
+            if (child >= 0) {
+                open[top++] = child;
+            }
+        }
+        buildCodeTable();
+    }
+
+    /**
+     * Reads a HuffmanTree written by serialize, with no magic number in
+     * front of it.
+     * 
+     * @param in the stream positioned at the serialized tree
+     * @return the tree that was read
+     */
+    public static HuffmanTree deserialize(BitInputStream in) {
+        return new HuffmanTree(in, false);
     }
 
     /**
@@ -133,67 +735,73 @@ public class HuffmanTree {
      * @param out the output file as a BitOutputStream
      */
     public void serialize(BitOutputStream out) {
-        serializeH(out, huffTree.getRoot());
+        if (left == null) {
+            buildTreeFromCodes();
+        }
+        int[] stack = new int[left.length + 2];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (node >= 0) {
+                out.writeBit(1);
+                stack[top++] = right[node];
+                stack[top++] = left[node];
+            } else {
+                out.writeBit(0);
+                out.writeBits(~node, 9);
+            }
+        }
     }
 
     /**
-     * Finds given char in tree
+     * Writes the code of the given symbol to out
      * 
-     * @param neededChar the char being searched for
-     * @return returns tree route as series of bits
+     * @param out    the output stream the code is written to
+     * @param symbol the symbol to write
      */
-    private List<Integer> findChar(short neededChar) {
-        Stack<TreeNode> stack = new Stack<>();
-        List<Short> checkedList = new ArrayList<>();
-        List<Integer> ret = new ArrayList<>();
-
-        stack.add(huffTree.getRoot());
-
-        while (stack.peek().getCharacter() != neededChar) {
-            if (stack.peek().getLeft() != null
-                    && !(checkedList.contains(stack.peek().getLeft().getCharacter()))) {
-                checkedList.add(stack.peek().getLeft().getCharacter());
-                stack.add(stack.peek().getLeft());
-                ret.add(0);
-            } else if (stack.peek().getRight() != null
-                    && !(checkedList.contains(stack.peek().getRight().getCharacter()))) {
-                checkedList.add(stack.peek().getRight().getCharacter());
-                stack.add(stack.peek().getRight());
-                ret.add(1);
-            } else {
-                stack.pop();
-                if (!ret.isEmpty()) {
-                    ret.remove(ret.size() - 1);
-                }
-            }
+    void writeCode(BitOutputStream out, int symbol) {
+        long code = codes[symbol];
+        int length = codeLengths[symbol];
+        if (length > Integer.SIZE) {
+            out.writeBits((int) (code >>> Integer.SIZE), length - Integer.SIZE);
+            length = Integer.SIZE;
         }
-
-        return ret;
+        out.writeBits((int) code, length);
     }
 
     /**
      * Writes chars to outputStream
      * 
-     * @param in  the input stream used to determine chars
-     * @param out the output stream chars are being written to
+     * @param in   the input stream used to determine chars
+     * @param out  the output stream chars are being written to
+     * @param seen the histogram the written bytes are counted in, or null
      */
-    private void writeChars(BitInputStream in, BitOutputStream out) {
-        short nextChar;
-        List<Integer> bitSeries;
+    private void writeChars(BitInputStream in, BitOutputStream out, Histogram seen) {
         while (in.hasBits()) {
-            nextChar = (short) in.readBits(8);
-            bitSeries = findChar(nextChar);
-            for (int i = 0; i < bitSeries.size(); i++) {
-                out.writeBit(bitSeries.get(i));
+            int b = in.readBits(8);
+            writeCode(out, b);
+            if (seen != null) {
+                seen.add(b, 1);
             }
         }
         // Add EOF
-        nextChar = (short) 256;
-        bitSeries = findChar(nextChar);
-        for (int i = 0; i < bitSeries.size(); i++) {
-            out.writeBit(bitSeries.get(i));
-        }
+        writeCode(out, 256);
+    }
 
+    /**
+     * Writes the codes of the bytes data[off] through data[off + len - 1].
+     * No EOF is written; the reader must know how many bytes to expect.
+     * 
+     * @param data the bytes to encode
+     * @param off  the index of the first byte to encode
+     * @param len  the number of bytes to encode
+     * @param out  the output stream codes are written to
+     */
+    public void encodeBytes(byte[] data, int off, int len, BitOutputStream out) {
+        for (int i = off; i < off + len; i++) {
+            writeCode(out, data[i] & 0xff);
+        }
     }
 
     /**
@@ -205,33 +813,115 @@ public class HuffmanTree {
      * @param out the file to write the compressed output to.
      */
     public void encode(BitInputStream in, BitOutputStream out) {
-        out.writeBits(1846, 32);
+        writeHeader(out);
+        encodeText(in, out);
+    }
+
+    /**
+     * Writes the header of a .grin file: the magic number and the tree.
+     * 
+     * @param out the output stream the header is written to
+     */
+    public void writeHeader(BitOutputStream out) {
+        out.writeBits(BlockFormat.GRIN_MAGIC, 32);
         serialize(out);
-        writeChars(in, out);
+    }
+
+    /**
+     * Writes the header of a single-stream file with canonical codes: the
+     * magic number and the code lengths, which are smaller than the tree.
+     * 
+     * @param out the output stream the header is written to
+     * @throws IllegalStateException if the codes are not canonical
+     */
+    public void writeCanonicalHeader(BitOutputStream out) {
+        out.writeBits(BlockFormat.CANONICAL_MAGIC, 32);
+        writeCodeLengths(out);
+    }
+
+    /**
+     * Reads the header of a single-stream file, whether it was written by
+     * writeHeader or writeCanonicalHeader
+     * 
+     * @param in the stream positioned at the magic number
+     * @return the tree the header describes
+     * @throws IllegalArgumentException if the stream is not a single-stream
+     *                                  Grin file
+     */
+    public static HuffmanTree readHeader(BitInputStream in) {
+        if (in.peekBits(32) == BlockFormat.CANONICAL_MAGIC) {
+            in.skipBits(32);
+            return readCodeLengths(in);
+        }
+        return new HuffmanTree(in);
+    }
+
+    /**
+     * Writes the codes of the rest of in and the EOF code after the header,
+     * then closes both streams.
+     * 
+     * @param in  the file to compress.
+     * @param out the file to write the codes to, after the header
+     */
+    public void encodeText(BitInputStream in, BitOutputStream out) {
+        encodeText(in, out, null);
+    }
+
+    /**
+     * Writes the codes of the rest of in and the EOF code after the header,
+     * counting the bytes as they are coded, then closes both streams. A tree
+     * built from a sample can then be compared with the exact counts
+     * without another pass over the input.
+     * 
+     * @param in   the file to compress.
+     * @param out  the file to write the codes to, after the header
+     * @param seen the histogram the coded bytes are counted in, or null
+     */
+    public void encodeText(BitInputStream in, BitOutputStream out, Histogram seen) {
+        writeChars(in, out, seen);
         in.close();
         out.close();
-
     }
 
     /**
-     * Traverse tree for given char
+     * Traverse tree for given char, one bit at a time
      * 
-     * @param in  the InputStream used for reading in chars
-     * @param cur the current TreeNode being searched
-     * @return a short of
+     * @param in   the InputStream used for reading in chars
+     * @param node the internal node the code has reached
+     * @return the symbol at the leaf the code ends at
+     * @throws IllegalArgumentException if the input ends inside the code
      */
-    private short traverseForChar(BitInputStream in, TreeNode cur) {
-        int nextBit;
-        if (cur.getLeft() == null) {
-            return cur.getCharacter();
-        } else {
-            nextBit = in.readBit();
+    private int traverseForChar(BitInputStream in, int node) {
+        while (node >= 0) {
+            int nextBit = in.readBit();
             if (nextBit == 0) {
-                return traverseForChar(in, cur.getLeft());
+                node = left[node];
+            } else if (nextBit == 1) {
+                node = right[node];
             } else {
-                return traverseForChar(in, cur.getRight());
+                throw new IllegalArgumentException("Truncated Huffman code");
             }
         }
+        return ~node;
+    }
+
+    /**
+     * Reads one code from the stream using the decode table, which must
+     * have been built
+     * 
+     * @param in the InputStream that stores char information
+     * @return the decoded symbol
+     */
+    int decodeSymbol(BitInputStream in) {
+        int index = in.peekBits(TABLE_BITS);
+        int entry = decodeTable[index];
+        if (entry >= 0) {
+            in.skipBits(entry & 0xff);
+            return entry >>> 8;
+        }
+        // code is longer than the table, finish it in the tree
+        in.skipBits(TABLE_BITS);
+        return traverseForChar(in, tableNodes[index]);
     }
 
     /**
@@ -241,10 +931,107 @@ public class HuffmanTree {
      * @param out the OutPutStream used for writing chars to file
      */
     private void decodeText(BitInputStream in, BitOutputStream out) {
-        short nextChar = traverseForChar(in, huffTree.getRoot());
-        while (nextChar != 256) {
-            out.writeBits(nextChar, 8);
-            nextChar = traverseForChar(in, huffTree.getRoot());
+        // decoded bytes are gathered here and written in bulk, so nothing
+        // is allocated or written per symbol
+        byte[] buffer = new byte[DECODE_BUFFER_SIZE];
+        int len = decodeUntilEof(in, buffer, 0, buffer.length);
+        while (len > 0) {
+            out.writeBytes(buffer, 0, len);
+            len = len < buffer.length ? 0 : decodeUntilEof(in, buffer, 0, buffer.length);
+        }
+    }
+
+    /**
+     * Decodes symbols into dst[off] through dst[off + len - 1] until either
+     * len bytes are decoded or the EOF character is read.
+     * 
+     * @param in  the InputStream that stores the codes
+     * @param dst the array decoded bytes are stored in
+     * @param off the index of the first decoded byte
+     * @param len the most bytes to decode
+     * @return the number of bytes decoded, less than len only if EOF was
+     *         read
+     */
+    public int decodeUntilEof(BitInputStream in, byte[] dst, int off, int len) {
+        if (multiTable == null) {
+            buildMultiTable();
+        }
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int n = decodeMulti(in, dst, i, end);
+            if (n == 0) {
+                int nextChar = decodeSymbol(in);
+                if (nextChar == 256) {
+                    return i - off;
+                }
+                if (nextChar > 256) {
+                    throw new IllegalArgumentException("Corrupt Huffman code");
+                }
+                dst[i] = (byte) nextChar;
+                n = 1;
+            }
+            i += n;
+        }
+        return len;
+    }
+
+    /**
+     * Decodes the bytes of one multi-symbol table entry into dst, if they
+     * all fit before end. The table must have been built.
+     * 
+     * @param in  the InputStream that stores the codes
+     * @param dst the array decoded bytes are stored in
+     * @param i   the index of the first decoded byte
+     * @param end the index after the last byte that may be stored
+     * @return the number of bytes decoded, 0 if the next symbol must be
+     *         decoded on its own
+     */
+    int decodeMulti(BitInputStream in, byte[] dst, int i, int end) {
+        int entry = multiTable[in.peekBits(MULTI_BITS)];
+        int n = (entry >>> 5) & 3;
+        if (n == 0 || i + n > end) {
+            return 0;
+        }
+        in.skipBits(entry & 0x1f);
+        dst[i] = (byte) (entry >>> 8);
+        if (n > 1) {
+            dst[i + 1] = (byte) (entry >>> 16);
+            if (n > 2) {
+                dst[i + 2] = (byte) (entry >>> 24);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Decodes exactly len symbols into dst[off] through dst[off + len - 1].
+     * 
+     * @param in  the InputStream that stores the codes
+     * @param dst the array decoded bytes are stored in
+     * @param off the index of the first decoded byte
+     * @param len the number of bytes to decode
+     * @throws IllegalArgumentException if a code is of EOF or a symbol past
+     *                                  it, which no block of bytes holds
+     */
+    public void decodeBytes(BitInputStream in, byte[] dst, int off, int len) {
+        if (multiTable == null) {
+            buildMultiTable();
+        }
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int n = decodeMulti(in, dst, i, end);
+            if (n == 0) {
+                int sym = decodeSymbol(in);
+                if (sym >= 256) {
+                    // a block knows its length, so it has no EOF either
+                    throw new IllegalArgumentException("Corrupt Huffman block");
+                }
+                dst[i] = (byte) sym;
+                n = 1;
+            }
+            i += n;
         }
     }
 
@@ -252,12 +1039,12 @@ public class HuffmanTree {
      * Ensure file is a Grin file
      * 
      * @param in the inputStream of file
+     * @throws IllegalArgumentException if the file is not a Grin file
      */
     private void checkForGrin(BitInputStream in) {
         int i = in.readBits(32);
-        if (i != 1846) {
-            System.out.println("Input file must be a Grin file");
-            throw new IllegalArgumentException();
+        if (i != BlockFormat.GRIN_MAGIC) {
+            throw new IllegalArgumentException("Input file must be a Grin file");
         }
     }
 
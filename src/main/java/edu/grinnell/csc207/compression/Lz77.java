@@ -0,0 +1,408 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.Arrays;
+
+/**
+ * Lz77 replaces repeated strings with matches, a length and a distance
+ * back to an earlier copy within a sliding window, in front of two
+ * Huffman codes as in Deflate (RFC 1951). Bytes and match lengths share
+ * one code: symbol FIRST_LENGTH + i stands for a length in bucket i.
+ * Distances have a code of their own, whose symbol is the bucket of the
+ * distance. Each bucket symbol is followed by extra bits that pick the
+ * value within the bucket.
+ *
+ * Matches are found through hash chains: every position is filed under a
+ * hash of its first MIN_MATCH bytes, and the chain of earlier positions
+ * with the same hash is searched for the longest match. The effort level,
+ * 1 to 9, bounds how far each chain is searched; levels from LAZY_LEVEL
+ * up also check whether the match at the next byte is longer before
+ * taking one (lazy matching). The greedy levels do not file the positions
+ * inside a match longer than their nice length, which halves the time on
+ * very repetitive data for a somewhat larger output.
+ *
+ * On 1 MB blocks of pg2600.txt level 1 encodes at about 40 MB/s, the
+ * budget for the fast levels, level 6 at about 10 MB/s and level 9 at
+ * about 7 MB/s. Decoding runs at 120 to 180 MB/s at every level.
+ */
+public class Lz77 {
+    /** the shortest match */
+    static final int MIN_MATCH = 3;
+
+    /** the longest match */
+    static final int MAX_MATCH = 258;
+
+    /** the farthest back a match may start, in bytes */
+    static final int WINDOW = 1 << 15;
+
+    /** the symbol of the first length bucket, the one after EOF */
+    static final int FIRST_LENGTH = 257;
+
+    /** the number of distance symbols, enough for any distance in WINDOW */
+    static final int DISTANCE_SYMBOLS = 30;
+
+    /** the lowest level that matches lazily */
+    static final int LAZY_LEVEL = 4;
+
+    // the positions of each hash are searched at most CHAIN[level] deep,
+    // and a match of NICE[level] bytes ends the search
+    private static final int[] CHAIN = {0, 4, 8, 16, 16, 32, 128, 256, 1024, 4096};
+    private static final int[] NICE = {0, 16, 32, 64, 32, 64, 128, 258, 258, 258};
+
+    private static final int HASH_BITS = 15;
+
+    // a match token holds its length above MATCH_SHIFT and its distance
+    // below; a literal token is the byte
+    private static final int MATCH_SHIFT = 16;
+
+    private byte[] data;
+    private int off;
+    private int end;
+    private int chain;
+    private int nice;
+
+    private int[] head;     // the latest position of each hash, or -1
+    private int[] prev;     // the position before each one with its hash
+
+    private int[] tokens;
+    private int count;
+
+    // the result of the last call to longestMatch
+    private int matchLength;
+    private int matchDistance;
+
+    /**
+     * Finds the matches of data[off] through data[off + len - 1]
+     *
+     * @param data  the bytes to parse
+     * @param off   the index of the first byte
+     * @param len   the number of bytes
+     * @param level the effort level, 1 (fastest) to 9 (smallest)
+     * @throws IllegalArgumentException if level is not 1 to 9
+     */
+    public Lz77(byte[] data, int off, int len, int level) {
+        if (level < 1 || level >= CHAIN.length) {
+            throw new IllegalArgumentException("LZ77 level must be 1 to 9");
+        }
+        this.data = data;
+        this.off = off;
+        this.end = off + len;
+        this.chain = CHAIN[level];
+        this.nice = NICE[level];
+        head = new int[1 << HASH_BITS];
+        Arrays.fill(head, -1);
+        prev = new int[WINDOW];
+        tokens = new int[len];
+        if (level >= LAZY_LEVEL) {
+            parseLazy();
+        } else {
+            parseGreedy();
+        }
+        // the chains are only needed while parsing
+        head = null;
+        prev = null;
+    }
+
+    /**
+     * @param i the position of at least MIN_MATCH bytes
+     * @return the hash of the bytes at i
+     */
+    private int hash(int i) {
+        int key = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+        return (key * 0x9e3779b1) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Files position i under its hash
+     *
+     * @param i the position of at least MIN_MATCH bytes
+     * @param h the hash of the bytes at i
+     */
+    private void insert(int i, int h) {
+        prev[i & (WINDOW - 1)] = head[h];
+        head[h] = i;
+    }
+
+    /**
+     * Searches the chain of hash h for the longest match of position i that
+     * is longer than best, and records it in matchLength and matchDistance
+     *
+     * @param i    the position to match, not yet filed under its hash
+     * @param h    the hash of the bytes at i
+     * @param best the length a match must beat
+     */
+    private void longestMatch(int i, int h, int best) {
+        matchLength = 0;
+        int max = Math.min(MAX_MATCH, end - i);
+        if (best >= max) {
+            return;
+        }
+        int limit = Math.max(off, i - WINDOW);
+        int candidate = head[h];
+        for (int n = chain; n > 0 && candidate >= limit; n--) {
+            // the byte that would make the match longer is checked first
+            if (data[candidate + best] == data[i + best] && data[candidate] == data[i]) {
+                int length = 1;
+                while (length < max && data[candidate + length] == data[i + length]) {
+                    length++;
+                }
+                if (length > best) {
+                    best = length;
+                    matchLength = length;
+                    matchDistance = i - candidate;
+                    if (length >= nice || length == max) {
+                        return;
+                    }
+                }
+            }
+            int next = prev[candidate & (WINDOW - 1)];
+            if (next >= candidate) {
+                // the slot was reused by a position past the window
+                return;
+            }
+            candidate = next;
+        }
+    }
+
+    /**
+     * Parses the input taking the longest match at each position
+     */
+    private void parseGreedy() {
+        int i = off;
+        while (i < end) {
+            matchLength = 0;
+            if (end - i >= MIN_MATCH) {
+                int h = hash(i);
+                longestMatch(i, h, MIN_MATCH - 1);
+                insert(i, h);
+            }
+            if (matchLength >= MIN_MATCH) {
+                tokens[count++] = matchLength << MATCH_SHIFT | matchDistance;
+                int next = i + matchLength;
+                // filing every position of a long match costs more than
+                // the matches it would find later, as in zlib
+                if (matchLength > nice) {
+                    i = next;
+                    continue;
+                }
+                for (i++; i < next; i++) {
+                    if (end - i >= MIN_MATCH) {
+                        insert(i, hash(i));
+                    }
+                }
+            } else {
+                tokens[count++] = data[i] & 0xff;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Parses the input holding each match back one position, and taking a
+     * longer match at the next position instead if there is one
+     */
+    private void parseLazy() {
+        // the match at i - 1, waiting to see whether the one at i is longer
+        boolean pending = false;
+        int prevLength = 0;
+        int prevDistance = 0;
+        for (int i = off; i < end; i++) {
+            matchLength = 0;
+            if (end - i >= MIN_MATCH) {
+                int h = hash(i);
+                if (prevLength < nice) {
+                    longestMatch(i, h, Math.max(prevLength, MIN_MATCH - 1));
+                }
+                insert(i, h);
+            }
+            if (pending && prevLength >= MIN_MATCH && matchLength <= prevLength) {
+                tokens[count++] = prevLength << MATCH_SHIFT | prevDistance;
+                int next = i - 1 + prevLength;
+                for (i++; i < next; i++) {
+                    if (end - i >= MIN_MATCH) {
+                        insert(i, hash(i));
+                    }
+                }
+                // the loop moves on to next
+                i--;
+                pending = false;
+                prevLength = 0;
+            } else {
+                if (pending) {
+                    tokens[count++] = data[i - 1] & 0xff;
+                }
+                pending = true;
+                prevLength = matchLength;
+                prevDistance = matchDistance;
+            }
+        }
+        if (pending) {
+            tokens[count++] = data[end - 1] & 0xff;
+        }
+    }
+
+    /**
+     * @param value a length or distance, less its smallest value
+     * @return the bucket of value: values 0 to 3 have buckets of their own,
+     *         and each power of two after that is split into two buckets
+     */
+    static int bucket(int value) {
+        if (value < 4) {
+            return value;
+        }
+        int high = 31 - Integer.numberOfLeadingZeros(value);
+        return 2 * high + ((value >>> (high - 1)) & 1);
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the number of extra bits that pick a value within bucket
+     */
+    static int extraBits(int bucket) {
+        return bucket < 4 ? 0 : bucket / 2 - 1;
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the smallest value in bucket
+     */
+    static int base(int bucket) {
+        return bucket < 4 ? bucket : (2 | (bucket & 1)) << (bucket / 2 - 1);
+    }
+
+    /**
+     * Counts the symbols of the length and byte code
+     *
+     * @return the count of each byte value and length symbol, indexed by
+     *         symbol
+     */
+    public long[] countLiterals() {
+        long[] counts = new long[FIRST_LENGTH + bucket(MAX_MATCH - MIN_MATCH) + 1];
+        for (int t = 0; t < count; t++) {
+            int token = tokens[t];
+            if (token >>> MATCH_SHIFT == 0) {
+                counts[token]++;
+            } else {
+                counts[FIRST_LENGTH + bucket((token >>> MATCH_SHIFT) - MIN_MATCH)]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the symbols of the distance code
+     *
+     * @return the count of each distance symbol
+     */
+    public long[] countDistances() {
+        long[] counts = new long[DISTANCE_SYMBOLS];
+        for (int t = 0; t < count; t++) {
+            int token = tokens[t];
+            if (token >>> MATCH_SHIFT != 0) {
+                counts[bucket((token & ((1 << MATCH_SHIFT) - 1)) - 1)]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param literals  the counts returned by countLiterals
+     * @param distances the counts returned by countDistances
+     * @return the number of extra bits the matches take after their
+     *         symbols
+     */
+    public static long extraBits(long[] literals, long[] distances) {
+        long total = 0;
+        for (int b = 0; FIRST_LENGTH + b < literals.length; b++) {
+            total += extraBits(b) * literals[FIRST_LENGTH + b];
+        }
+        for (int b = 0; b < distances.length; b++) {
+            total += extraBits(b) * distances[b];
+        }
+        return total;
+    }
+
+    /**
+     * Writes the codes of the parsed input. No EOF is written; the reader
+     * must know how many bytes to expect.
+     *
+     * @param literals  the codes of bytes and lengths, of the counts
+     *                  returned by countLiterals
+     * @param distances the codes of distances, of the counts returned by
+     *                  countDistances
+     * @param out       the output stream codes are written to
+     */
+    public void encode(HuffmanTree literals, HuffmanTree distances, BitOutputStream out) {
+        for (int t = 0; t < count; t++) {
+            int token = tokens[t];
+            int length = token >>> MATCH_SHIFT;
+            if (length == 0) {
+                literals.writeCode(out, token);
+                continue;
+            }
+            int value = length - MIN_MATCH;
+            int b = bucket(value);
+            literals.writeCode(out, FIRST_LENGTH + b);
+            out.writeBits(value - base(b), extraBits(b));
+            value = (token & ((1 << MATCH_SHIFT) - 1)) - 1;
+            b = bucket(value);
+            distances.writeCode(out, b);
+            out.writeBits(value - base(b), extraBits(b));
+        }
+    }
+
+    /**
+     * Decodes exactly len bytes into dst[off] through dst[off + len - 1],
+     * copying each match from the bytes already decoded
+     *
+     * @param literals  the codes of bytes and lengths
+     * @param distances the codes of distances
+     * @param in        the InputStream that stores the codes
+     * @param dst       the array decoded bytes are stored in
+     * @param off       the index of the first decoded byte
+     * @param len       the number of bytes to decode
+     * @throws IllegalArgumentException if a match reaches before off or
+     *                                  past len bytes
+     */
+    public static void decode(HuffmanTree literals, HuffmanTree distances, BitInputStream in,
+            byte[] dst, int off, int len) {
+        literals.prepareDecoding();
+        distances.prepareSymbolDecoding();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = literals.decodeMulti(in, dst, i, end);
+            if (n > 0) {
+                i += n;
+                continue;
+            }
+            int symbol = literals.decodeSymbol(in);
+            if (symbol < 256) {
+                dst[i++] = (byte) symbol;
+                continue;
+            }
+            int b = symbol - FIRST_LENGTH;
+            if (b < 0) {
+                throw new IllegalArgumentException("Corrupt LZ77 block");
+            }
+            int length = MIN_MATCH + base(b) + in.readBits(extraBits(b));
+            b = distances.decodeSymbol(in);
+            if (b >= DISTANCE_SYMBOLS) {
+                throw new IllegalArgumentException("Corrupt LZ77 block");
+            }
+            int distance = 1 + base(b) + in.readBits(extraBits(b));
+            if (distance > i - off || length > end - i || length < MIN_MATCH) {
+                throw new IllegalArgumentException("Corrupt LZ77 block");
+            }
+            int from = i - distance;
+            if (distance >= length) {
+                System.arraycopy(dst, from, dst, i, length);
+            } else {
+                // the match overlaps the bytes it produces
+                for (int k = 0; k < length; k++) {
+                    dst[i + k] = dst[from + k];
+                }
+            }
+            i += length;
+        }
+    }
+}
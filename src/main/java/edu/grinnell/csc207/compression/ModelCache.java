@@ -0,0 +1,127 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A ModelCache keeps the most recently used GrinModels in memory, with
+ * their decode tables built, and loads the others from a directory when
+ * they are asked for. The model with id n is stored in the directory as
+ * the file named by modelFile(n). Models can also be loaded by file name,
+ * as --model names them, and are then parsed once however often they are
+ * asked for.
+ *
+ * A ModelCache may be shared by threads.
+ */
+public class ModelCache {
+    private Path directory;
+    private Map<Integer, GrinModel> models;
+    private Map<Path, Integer> ids;     // the id of each file loaded by name
+
+    /**
+     * Constructs a ModelCache
+     *
+     * @param directory the directory that model files are loaded from, or
+     *                  null to hold only the models that are put in
+     * @param capacity  the most models kept in memory
+     */
+    public ModelCache(String directory, int capacity) {
+        this.directory = directory == null ? null : Paths.get(directory);
+        // access order, so the eldest entry is the least recently used
+        this.models = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, GrinModel> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.ids = new HashMap<>();
+    }
+
+    /**
+     * @param id a model id
+     * @return the name of the file the model with the given id is stored in
+     */
+    public static String modelFile(int id) {
+        return String.format("%08x.model", id);
+    }
+
+    /**
+     * Adds a model to the cache, and to the directory if it is not there
+     * yet
+     *
+     * @param model the model to add
+     * @throws IOException if the model cannot be written to the directory
+     */
+    public synchronized void put(GrinModel model) throws IOException {
+        models.put(model.getId(), model);
+        if (directory != null) {
+            Path file = directory.resolve(modelFile(model.getId()));
+            if (!Files.exists(file)) {
+                model.write(file.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns the model with the given id, loading it from the directory if
+     * it is not in memory
+     *
+     * @param id the id of the model
+     * @return the model
+     * @throws IOException if the model file cannot be read
+     * @throws IllegalArgumentException if no model has the given id
+     */
+    public synchronized GrinModel get(int id) throws IOException {
+        GrinModel model = models.get(id);
+        if (model != null) {
+            return model;
+        }
+        Path file = directory == null ? null : directory.resolve(modelFile(id));
+        if (file == null || !Files.exists(file)) {
+            throw new IllegalArgumentException("Unknown Grin model: " + modelFile(id));
+        }
+        model = GrinModel.read(file.toString());
+        if (model.getId() != id) {
+            throw new IllegalArgumentException("Grin model file has the wrong id: " + file);
+        }
+        models.put(id, model);
+        return model;
+    }
+
+    /**
+     * Returns the model stored in the given file, reading the file only if
+     * its model is not in memory
+     *
+     * @param file a model file
+     * @return the model
+     * @throws IOException if the model file cannot be read
+     * @throws IllegalArgumentException if the file is not a model file
+     */
+    public synchronized GrinModel load(String file) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        Integer id = ids.get(path);
+        GrinModel model = id == null ? null : models.get(id);
+        if (model == null) {
+            model = GrinModel.read(file);
+            models.put(model.getId(), model);
+            ids.put(path, model.getId());
+        }
+        return model;
+    }
+
+    /**
+     * Decodes a record with the model it refers to
+     *
+     * @param record the coded record
+     * @return the bytes of the record
+     * @throws IOException if the model file cannot be read
+     */
+    public byte[] decode(byte[] record) throws IOException {
+        return get(GrinModel.idOf(record)).decode(record);
+    }
+}
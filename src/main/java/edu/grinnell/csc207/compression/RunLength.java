@@ -0,0 +1,161 @@
+package edu.grinnell.csc207.compression;
+
+import java.util.Arrays;
+
+/**
+ * RunLength codes runs of a repeated byte ahead of the Huffman codes. A
+ * run is the byte once and then a run symbol saying how many more copies
+ * follow, so a long run costs a few bits instead of a bit per byte, and
+ * passes through the coding loops as two symbols instead of thousands.
+ *
+ * The run symbols extend the alphabet past EOF: symbol FIRST_RUN + k - 1
+ * stands for r more copies of the previous byte, where 2^k &lt;= r &lt;
+ * 2^(k+1), and is followed by the low k bits of r. Fewer than MIN_REPEAT
+ * copies are coded as bytes.
+ */
+public class RunLength {
+    /** the first run symbol, the one after EOF */
+    static final int FIRST_RUN = 257;
+
+    /**
+     * the number of run symbols, enough for any run in an array; they fill
+     * the BlockFormat.MAX_SYMBOLS alphabet
+     */
+    static final int RUN_SYMBOLS = 30;
+
+    // the fewest copies coded as a run
+    private static final int MIN_REPEAT = 2;
+
+    /**
+     * Prevents instantiation
+     */
+    private RunLength() {
+    }
+
+    /**
+     * Counts the symbols that data[off] through data[off + len - 1] are
+     * coded as
+     *
+     * @param data the bytes to count
+     * @param off  the index of the first byte
+     * @param len  the number of bytes
+     * @return the count of each byte value and run symbol, indexed by
+     *         symbol
+     */
+    public static long[] count(byte[] data, int off, int len) {
+        long[] counts = new long[FIRST_RUN + RUN_SYMBOLS];
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            byte b = data[i];
+            counts[b & 0xff]++;
+            int j = i + 1;
+            while (j < end && data[j] == b) {
+                j++;
+            }
+            int repeat = j - i - 1;
+            if (repeat >= MIN_REPEAT) {
+                counts[runSymbol(repeat)]++;
+                i = j;
+            } else {
+                i++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param counts the symbol counts returned by count
+     * @return the number of bits the runs take after their symbols
+     */
+    public static long extraBits(long[] counts) {
+        long total = 0;
+        for (int k = 1; k <= RUN_SYMBOLS; k++) {
+            total += k * counts[FIRST_RUN + k - 1];
+        }
+        return total;
+    }
+
+    /**
+     * @param repeat a number of copies, at least 1
+     * @return the run symbol that stands for repeat copies
+     */
+    private static int runSymbol(int repeat) {
+        return FIRST_RUN + 30 - Integer.numberOfLeadingZeros(repeat);
+    }
+
+    /**
+     * Writes the codes of the bytes data[off] through data[off + len - 1],
+     * with runs replaced by run symbols. No EOF is written; the reader must
+     * know how many bytes to expect.
+     *
+     * @param tree the codes, of the counts returned by count
+     * @param data the bytes to encode
+     * @param off  the index of the first byte to encode
+     * @param len  the number of bytes to encode
+     * @param out  the output stream codes are written to
+     */
+    public static void encode(HuffmanTree tree, byte[] data, int off, int len,
+            BitOutputStream out) {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            byte b = data[i];
+            tree.writeCode(out, b & 0xff);
+            int j = i + 1;
+            while (j < end && data[j] == b) {
+                j++;
+            }
+            int repeat = j - i - 1;
+            if (repeat >= MIN_REPEAT) {
+                int symbol = runSymbol(repeat);
+                tree.writeCode(out, symbol);
+                out.writeBits(repeat, symbol - FIRST_RUN + 1);
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Decodes exactly len bytes into dst[off] through dst[off + len - 1],
+     * expanding runs as their symbols are read
+     *
+     * @param tree the codes the bytes were encoded with
+     * @param in   the InputStream that stores the codes
+     * @param dst  the array decoded bytes are stored in
+     * @param off  the index of the first decoded byte
+     * @param len  the number of bytes to decode
+     * @throws IllegalArgumentException if a run has no byte before it or
+     *                                  goes past len bytes
+     */
+    public static void decode(HuffmanTree tree, BitInputStream in, byte[] dst, int off,
+            int len) {
+        tree.prepareDecoding();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = tree.decodeMulti(in, dst, i, end);
+            if (n > 0) {
+                i += n;
+                continue;
+            }
+            int symbol = tree.decodeSymbol(in);
+            if (symbol < 256) {
+                dst[i++] = (byte) symbol;
+                continue;
+            }
+            if (symbol < FIRST_RUN || i == off) {
+                throw new IllegalArgumentException("Corrupt run-length block");
+            }
+            int k = symbol - FIRST_RUN + 1;
+            int repeat = 1 << k | in.readBits(k);
+            if (repeat < 0 || repeat > end - i) {
+                throw new IllegalArgumentException("Corrupt run-length block");
+            }
+            Arrays.fill(dst, i, i + repeat, dst[i - 1]);
+            i += repeat;
+        }
+    }
+}
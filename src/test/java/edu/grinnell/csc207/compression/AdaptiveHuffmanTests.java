@@ -0,0 +1,106 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.Size;
+
+public class AdaptiveHuffmanTests {
+    private static byte[] encode(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AdaptiveHuffman().encode(new BitInputStream(ByteBuffer.wrap(data)),
+                new BitOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decode(byte[] file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AdaptiveHuffman().decode(new BitInputStream(ByteBuffer.wrap(file)),
+                new BitOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Example
+    void emptyInputIsTheMagicAndEnd() {
+        byte[] file = encode(new byte[0]);
+        assertEquals(BlockFormat.ADAPTIVE_MAGIC, ByteBuffer.wrap(file).getInt());
+        // END is one bit in the starting tree
+        assertEquals(5, file.length);
+        assertArrayEquals(new byte[0], decode(file));
+    }
+
+    @Example
+    void oneSymbolRoundTrips() {
+        byte[] one = {42};
+        assertArrayEquals(one, decode(encode(one)));
+        byte[] same = new byte[10_000];
+        Arrays.fill(same, (byte) 0xff);
+        byte[] file = encode(same);
+        assertArrayEquals(same, decode(file));
+        // the repeated byte soon has a one-bit code
+        assertTrue(file.length < same.length / 7, "size " + file.length);
+    }
+
+    @Example
+    void everyByteValueRoundTrips() {
+        byte[] all = Inputs.allBytes();
+        assertArrayEquals(all, decode(encode(all)));
+        byte[] twice = new byte[512];
+        for (int i = 0; i < twice.length; i++) {
+            twice[i] = (byte) (255 - i % 256);
+        }
+        assertArrayEquals(twice, decode(encode(twice)));
+    }
+
+    @Example
+    void longSkewedInputRoundTripsNearItsEntropy() {
+        // weights shift every few symbols, so nodes are swapped throughout
+        // to keep the sibling property
+        byte[] skewed = Inputs.skewed(200_000, 5);
+        byte[] file = encode(skewed);
+        assertArrayEquals(skewed, decode(file));
+        // the bytes carry about 2 bits each, and a static tree codes them in
+        // as few bits; an adaptive tree that failed to adapt would not
+        assertTrue(file.length < skewed.length / 4 + 2000, "size " + file.length);
+    }
+
+    @Example
+    void changingStatisticsRoundTrip() {
+        byte[] data = new byte[60_000];
+        for (int i = 0; i < data.length; i++) {
+            // one byte dominates each third of the input in turn
+            data[i] = (byte) (i % 7 == 0 ? i : 'a' + i / 20_000);
+        }
+        assertArrayEquals(data, decode(encode(data)));
+    }
+
+    @Example
+    void textRoundTrips() {
+        byte[] text = Inputs.text();
+        assertArrayEquals(text, decode(encode(text)));
+    }
+
+    @Property
+    void bytesRoundTrip(@ForAll @Size(max = 5000) byte[] data) {
+        assertArrayEquals(data, decode(encode(data)));
+    }
+
+    @Example
+    void truncatedStreamsAreRejected() {
+        byte[] file = encode(Inputs.text());
+        for (int cut = 5; cut < 40; cut++) {
+            byte[] truncated = Arrays.copyOf(file, cut);
+            assertThrows(IllegalArgumentException.class, () -> decode(truncated));
+        }
+        assertThrows(IllegalArgumentException.class, () -> decode(Inputs.text()));
+    }
+}
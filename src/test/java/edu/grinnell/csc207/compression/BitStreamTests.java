@@ -0,0 +1,243 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class BitStreamTests {
+    /**
+     * The fields of a test stream: field i is the low widths[i] bits of
+     * values[i]
+     */
+    private static final class Fields {
+        private final int[] widths;
+        private final int[] values;
+
+        Fields(List<Integer> widths, long seed) {
+            Random random = new Random(seed);
+            this.widths = new int[widths.size()];
+            this.values = new int[widths.size()];
+            for (int i = 0; i < this.widths.length; i++) {
+                this.widths[i] = widths.get(i);
+                this.values[i] = random.nextInt();
+            }
+        }
+
+        Fields(int width, int n, long seed) {
+            this(Collections.nCopies(n, width), seed);
+        }
+
+        long bits() {
+            long total = 0;
+            for (int w : widths) {
+                total += w;
+            }
+            return total;
+        }
+
+        void write(BitOutputStream out) {
+            for (int i = 0; i < widths.length; i++) {
+                out.writeBits(values[i], widths[i]);
+            }
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BitOutputStream out = new BitOutputStream(bytes);
+            write(out);
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        void check(BitInputStream in) {
+            for (int i = 0; i < widths.length; i++) {
+                int expected = (int) (values[i] & ((1L << widths[i]) - 1));
+                assertEquals(expected, in.readBits(widths[i]), "field " + i);
+            }
+        }
+    }
+
+    /**
+     * An InputStream that hands out at most one byte per read, so every
+     * refill of a BitInputStream has to go back to its channel
+     */
+    private static final class Trickle extends InputStream {
+        private final ByteArrayInputStream in;
+
+        Trickle(byte[] data) {
+            in = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    @Property
+    void fieldsReadBackFromBuffer(
+            @ForAll @Size(max = 200) List<@IntRange(min = 0, max = 32) Integer> widths,
+            @ForAll long seed) {
+        Fields fields = new Fields(widths, seed);
+        byte[] data = fields.encode();
+        assertEquals((fields.bits() + 7) / 8, data.length);
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(data));
+        fields.check(in);
+        int padding = (int) (8 * data.length - fields.bits());
+        if (padding > 0) {
+            assertEquals(0, in.readBits(padding));
+        }
+        assertFalse(in.hasBits());
+        assertEquals(-1, in.readBit());
+    }
+
+    @Property
+    void fieldsReadBackFromChannel(
+            @ForAll @Size(max = 200) List<@IntRange(min = 1, max = 32) Integer> widths,
+            @ForAll long seed) {
+        Fields fields = new Fields(widths, seed);
+        BitInputStream in = new BitInputStream(new Trickle(fields.encode()));
+        fields.check(in);
+    }
+
+    @Property
+    void peekThenSkipMatchesRead(
+            @ForAll @Size(max = 200) List<@IntRange(min = 1, max = 32) Integer> widths,
+            @ForAll long seed) {
+        Fields fields = new Fields(widths, seed);
+        byte[] data = fields.encode();
+        BitInputStream read = new BitInputStream(ByteBuffer.wrap(data));
+        BitInputStream peek = new BitInputStream(new Trickle(data));
+        for (int w : fields.widths) {
+            assertEquals(read.readBits(w), peek.peekBits(w));
+            peek.skipBits(w);
+        }
+    }
+
+    @Property
+    void readsAcrossRefillEdges(@ForAll @IntRange(min = 0, max = 64) int lead,
+            @ForAll @IntRange(min = 1, max = 32) int width, @ForAll long seed) {
+        // lead one-bit fields leave the accumulator at every fill level
+        // before the wide reads start
+        List<Integer> widths = new ArrayList<>();
+        for (int i = 0; i < lead; i++) {
+            widths.add(1);
+        }
+        for (int i = 0; i < 16; i++) {
+            widths.add(width);
+        }
+        Fields fields = new Fields(widths, seed);
+        fields.check(new BitInputStream(ByteBuffer.wrap(fields.encode())));
+        fields.check(new BitInputStream(new Trickle(fields.encode())));
+    }
+
+    @Example
+    void oneAndThirtyTwoBitFields() {
+        for (int width : new int[] {1, 32}) {
+            Fields fields = new Fields(width, 1000, width);
+            fields.check(new BitInputStream(ByteBuffer.wrap(fields.encode())));
+        }
+    }
+
+    @Property
+    void peekPastEndPadsWithZeros(@ForAll @IntRange(min = 1, max = 32) int n,
+            @ForAll byte b) {
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(new byte[] {b}));
+        int expected = n <= 8 ? (b & 0xff) >>> (8 - n) : (b & 0xff) << (n - 8);
+        assertEquals(expected, in.peekBits(n));
+        assertEquals(n <= 8 ? expected : -1, in.readBits(n));
+    }
+
+    @Property
+    void flushPadsToByteBoundary(@ForAll @IntRange(min = 1, max = 7) int n,
+            @ForAll @IntRange(min = 0, max = 127) int bits) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        out.writeBits(bits, n);
+        out.flush();
+        out.writeBits(0xa5, 8);
+        out.close();
+        byte[] expected = {(byte) ((bits & ((1 << n) - 1)) << (8 - n)), (byte) 0xa5};
+        assertArrayEquals(expected, bytes.toByteArray());
+    }
+
+    @Property
+    void bytesFollowBitsAtByteBoundary(@ForAll @Size(max = 100) byte[] data,
+            @ForAll @IntRange(min = 0, max = 8) int fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        for (int i = 0; i < fields; i++) {
+            out.writeBits(i, 8);
+        }
+        out.writeBytes(data, 0, data.length);
+        out.close();
+        BitInputStream in = new BitInputStream(ByteBuffer.wrap(bytes.toByteArray()));
+        for (int i = 0; i < fields; i++) {
+            assertEquals(i, in.readBits(8));
+        }
+        byte[] back = new byte[data.length];
+        assertEquals(data.length, in.readBytes(back, 0, back.length));
+        assertArrayEquals(data, back);
+    }
+
+    @Example
+    void debugStreamFlushesAsText() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new DebugBitOutputStream(new BitOutputStream(bytes));
+        out.writeBits(0b101, 3);
+        out.flush();
+        assertEquals("101", bytes.toString());
+        out.writeBit(0);
+        out.close();
+        assertEquals("1010", bytes.toString());
+    }
+
+    @Example
+    void mappedWindowsRoundTrip() throws IOException {
+        // 3 MB of 13-bit fields crosses the first two output windows, and
+        // odd-sized input windows split fields and 32-bit refills
+        Fields fields = new Fields(13, 2_000_000, 7);
+        Path file = Files.createTempFile("grin-bits", ".bin");
+        try {
+            BitOutputStream out = BitOutputStream.map(file.toString());
+            fields.write(out);
+            out.close();
+            assertEquals((fields.bits() + 7) / 8, Files.size(file));
+            assertArrayEquals(fields.encode(), Files.readAllBytes(file));
+
+            for (long window : new long[] {7, 4099, 1 << 20}) {
+                BitInputStream in = BitInputStream.map(file.toString(), window);
+                fields.check(in);
+                in.close();
+            }
+            BitInputStream in = new BitInputStream(file.toString());
+            fields.check(in);
+            in.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.jqwik.api.Arbitraries;
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.Provide;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class BlockFormatTests {
+    /** The ways a block can be coded, and the type each gives English text */
+    enum Coding {
+        HUFFMAN(BlockFormat.TYPE_HUFFMAN),
+        CANONICAL(BlockFormat.TYPE_CANONICAL),
+        ORDER1(BlockFormat.TYPE_ORDER1),
+        RLE(BlockFormat.TYPE_RLE),
+        LZ77(BlockFormat.TYPE_LZ77);
+
+        private final int textType;
+
+        Coding(int textType) {
+            this.textType = textType;
+        }
+
+        GrinOptions options(int blockSize) {
+            GrinOptions options = new GrinOptions();
+            options.setBlockSize(blockSize);
+            options.setThreads(1);
+            switch (this) {
+                case CANONICAL:
+                    options.setCanonical(true);
+                    break;
+                case ORDER1:
+                    options.setContextOrder(1);
+                    break;
+                case RLE:
+                    options.setRunLength(true);
+                    break;
+                case LZ77:
+                    options.setLzLevel(GrinOptions.DEFAULT_LZ_LEVEL);
+                    break;
+                default:
+                    break;
+            }
+            return options;
+        }
+    }
+
+    private static byte[] roundTrip(byte[] data, int type, GrinOptions options) {
+        byte[] block = BlockFormat.encodeBlock(data, data.length, options);
+        ByteBuffer header = ByteBuffer.wrap(block);
+        int actual = header.get() & 0xff;
+        if (type >= 0) {
+            assertEquals(type, actual);
+        }
+        assertEquals(data.length, header.getInt());
+        assertEquals(block.length - BlockFormat.BLOCK_HEADER_SIZE, header.getInt());
+        byte[] decoded = new byte[data.length];
+        BlockFormat.decodeBlock(actual,
+                Arrays.copyOfRange(block, BlockFormat.BLOCK_HEADER_SIZE, block.length),
+                decoded, data.length);
+        return decoded;
+    }
+
+    @Example
+    void everyCodingRoundTripsEveryInput() {
+        for (Coding coding : Coding.values()) {
+            for (Map.Entry<String, byte[]> input : Inputs.all().entrySet()) {
+                byte[] data = input.getValue();
+                assertArrayEquals(data, roundTrip(data, -1, coding.options(1 << 20)),
+                        coding + " " + input.getKey());
+            }
+        }
+    }
+
+    @Example
+    void textIsCodedWithTheChosenType() {
+        byte[] text = Inputs.text();
+        for (Coding coding : Coding.values()) {
+            assertArrayEquals(text, roundTrip(text, coding.textType, coding.options(1 << 20)),
+                    coding.toString());
+        }
+    }
+
+    @Example
+    void randomBytesAreStored() {
+        byte[] data = Inputs.random(50_000, 3);
+        for (Coding coding : Coding.values()) {
+            assertArrayEquals(data, roundTrip(data, BlockFormat.TYPE_STORED,
+                    coding.options(1 << 20)), coding.toString());
+        }
+    }
+
+    @Example
+    void order1BlocksThatDoNotPayAreNotKept() {
+        for (int len : new int[] {2048, 4096, 16384}) {
+            // one context is predictable, which buys it a tree of its own,
+            // but the rest are random
+            byte[] data = Inputs.random(len, len);
+            for (int i = 0; i + 1 < len; i++) {
+                if (data[i] == 'A') {
+                    data[i + 1] = 'B';
+                }
+            }
+            assertArrayEquals(data, roundTrip(data, BlockFormat.TYPE_STORED,
+                    Coding.ORDER1.options(1 << 20)), "length " + len);
+        }
+        // skewed bytes shrink with one tree, and no better with 256
+        byte[] skewed = Inputs.skewed(20_000, 9);
+        byte[] order1 = BlockFormat.encodeBlock(skewed, skewed.length,
+                Coding.ORDER1.options(1 << 20));
+        byte[] order0 = BlockFormat.encodeBlock(skewed, skewed.length,
+                Coding.HUFFMAN.options(1 << 20));
+        assertTrue(order1.length <= order0.length);
+    }
+
+    @Property
+    void blocksRoundTrip(@ForAll @Size(max = 3000) byte[] data, @ForAll Coding coding,
+            @ForAll @IntRange(min = 0, max = 12) int maxCodeLength) {
+        GrinOptions options = coding.options(1 << 20);
+        options.setMaxCodeLength(maxCodeLength < 9 ? 0 : maxCodeLength);
+        assertArrayEquals(data, roundTrip(data, -1, options));
+    }
+
+    @Property(tries = 100)
+    void containersRoundTrip(@ForAll("inputName") String name, @ForAll Coding coding,
+            @ForAll @IntRange(min = 256, max = 20_000) int blockSize,
+            @ForAll @IntRange(min = 1, max = 4) int threads) {
+        byte[] data = Inputs.all().get(name);
+        GrinOptions options = coding.options(blockSize);
+        options.setThreads(threads);
+        byte[] file = Inputs.writeBlocks(data, options);
+        assertEquals(BlockFormat.BLOCK_MAGIC, ByteBuffer.wrap(file).getInt());
+        assertArrayEquals(data, Inputs.readBlocks(file, threads));
+    }
+
+    @Provide
+    Arbitrary<String> inputName() {
+        return Arbitraries.of(Inputs.all().keySet());
+    }
+
+    /**
+     * @return the text as a container of 4 KB Huffman blocks
+     */
+    private static byte[] textFile() {
+        return Inputs.writeBlocks(Inputs.text(), Coding.HUFFMAN.options(4096));
+    }
+
+    /**
+     * Checks that both readers reject a damaged container
+     *
+     * @param file the damaged container
+     */
+    private static void assertRejected(byte[] file) throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> Inputs.readBlocks(file, 1));
+        assertThrows(IllegalArgumentException.class, () -> Inputs.readBlocks(file, 3));
+        Path path = Files.createTempFile("grin-corrupt", ".grin");
+        try {
+            Files.write(path, file);
+            assertThrows(IllegalArgumentException.class, () -> {
+                try (GrinReader reader = new GrinReader(path.toString())) {
+                    reader.read(0, (int) reader.length());
+                }
+            });
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Example
+    void truncatedFilesAreRejected() throws IOException {
+        byte[] file = textFile();
+        for (int cut = file.length - 1; cut >= 0; cut -= cut > file.length - 64 ? 1 : 97) {
+            assertRejected(Arrays.copyOf(file, cut));
+        }
+    }
+
+    @Example
+    void damagedTrailersAreRejected() throws IOException {
+        byte[] file = textFile();
+        for (int i = file.length - BlockFormat.TRAILER_SIZE; i < file.length; i++) {
+            byte[] damaged = file.clone();
+            damaged[i] ^= 0x10;
+            assertRejected(damaged);
+        }
+    }
+
+    @Example
+    void damagedIndexesAreRejected() throws IOException {
+        byte[] file = textFile();
+        ByteBuffer trailer = ByteBuffer.wrap(file, file.length - BlockFormat.TRAILER_SIZE, 8);
+        int index = (int) trailer.getLong();
+        // the block count, then a length and a stored size per block
+        for (int i = index; i < file.length - BlockFormat.TRAILER_SIZE; i += 4) {
+            byte[] damaged = file.clone();
+            damaged[i + 3] ^= 0x01;
+            assertRejected(damaged);
+        }
+    }
+
+    @Example
+    void damagedBlockTypesAreRejected() throws IOException {
+        byte[] file = textFile();
+        int second = 8 + ByteBuffer.wrap(file).getInt(8 + 5) + BlockFormat.BLOCK_HEADER_SIZE;
+        assertEquals(BlockFormat.TYPE_HUFFMAN, file[second]);
+        for (int type : new int[] {BlockFormat.TYPE_LZ77 + 1, 0x7f, BlockFormat.TYPE_END}) {
+            byte[] damaged = file.clone();
+            damaged[second] = (byte) type;
+            assertRejected(damaged);
+        }
+        byte[] damaged = file.clone();
+        damaged[second] = BlockFormat.TYPE_STORED;
+        assertRejected(damaged);
+    }
+
+    /**
+     * @param lengths pairs of a symbol and its code length, in symbol order
+     * @return a code length header as writeCodeLengths writes it
+     */
+    private static byte[] codeLengths(int... lengths) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        out.writeBits(3, 3);
+        out.writeBits(lengths.length / 2, 9);
+        int prev = -1;
+        for (int i = 0; i < lengths.length; i += 2) {
+            int gap = lengths[i] - prev;
+            out.writeBits(gap, 2 * (32 - Integer.numberOfLeadingZeros(gap)) - 1);
+            out.writeBits(lengths[i + 1], 3);
+            prev = lengths[i];
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Example
+    void incompleteCodeLengthsAreRejected() {
+        // three 2-bit codes leave the fourth unused, and a corrupt block
+        // would decode it without an error
+        byte[] gaps = codeLengths('a', 2, 'b', 2, 256, 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> HuffmanTree.readCodeLengths(new BitInputStream(ByteBuffer.wrap(gaps))));
+        HuffmanTree full = HuffmanTree.readCodeLengths(new BitInputStream(ByteBuffer.wrap(
+                codeLengths('a', 2, 'b', 2, 'c', 2, 256, 2))));
+        assertEquals(4, full.getSymbolCount());
+        // a lone symbol has a 1-bit code and an unused sibling
+        HuffmanTree lone = HuffmanTree.readCodeLengths(new BitInputStream(ByteBuffer.wrap(
+                codeLengths(256, 1))));
+        assertEquals(1, lone.getSymbolCount());
+    }
+
+    @Example
+    void otherFilesAreNotContainers() throws IOException {
+        assertRejected(new byte[0]);
+        assertRejected(Inputs.text());
+        assertRejected(Files.readAllBytes(Path.of("files", "pg2600.grin")));
+    }
+
+    @Property(tries = 300)
+    void rangeReadsMatchTheInput(@ForAll @IntRange(min = 0, max = 40_000) int offset,
+            @ForAll @IntRange(min = 0, max = 20_000) int len,
+            @ForAll @IntRange(min = 64, max = 10_000) int blockSize) throws IOException {
+        byte[] text = Inputs.text();
+        Path path = Files.createTempFile("grin-range", ".grin");
+        try {
+            Files.write(path, Inputs.writeBlocks(text, Coding.CANONICAL.options(blockSize)));
+            try (GrinReader reader = new GrinReader(path.toString())) {
+                assertEquals(text.length, reader.length());
+                int from = Math.min(offset, text.length);
+                int to = (int) Math.min((long) offset + len, text.length);
+                assertArrayEquals(Arrays.copyOfRange(text, from, Math.max(from, to)),
+                        reader.read(offset, len));
+                // a second read of the same range is served from the cache
+                assertArrayEquals(Arrays.copyOfRange(text, from, Math.max(from, to)),
+                        reader.read(offset, len));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Example
+    void everyByteReadsBackAlone() throws IOException {
+        byte[] data = Inputs.skewed(5000, 4);
+        Path path = Files.createTempFile("grin-range", ".grin");
+        try {
+            Files.write(path, Inputs.writeBlocks(data, Coding.HUFFMAN.options(333)));
+            try (GrinReader reader = new GrinReader(path.toString())) {
+                for (int i = data.length - 1; i >= 0; i--) {
+                    assertArrayEquals(new byte[] {data[i]}, reader.read(i, 1));
+                }
+                assertEquals(0, reader.read(data.length, 10).length);
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
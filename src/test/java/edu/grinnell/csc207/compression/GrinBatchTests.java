@@ -0,0 +1,57 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GrinBatchTests {
+    @TempDir
+    Path dir;
+
+    private Path write(String name, byte[] data) throws IOException {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, data);
+        return file;
+    }
+
+    @Test
+    public void directoriesRoundTrip() throws IOException {
+        byte[] text = Inputs.text();
+        write("in/text.txt", text);
+        write("in/run.bin", Inputs.run(5000));
+        GrinOptions options = new GrinOptions();
+        options.setThreads(2);
+        Path grin = dir.resolve("grin");
+        assertEquals(0, new GrinBatch(true, options).run(dir.resolve("in").toString(),
+                grin.toString()));
+        assertTrue(Files.exists(grin.resolve("text.txt.grin")));
+        Path out = dir.resolve("out");
+        assertEquals(0, new GrinBatch(false, options).run(grin.toString(), out.toString()));
+        assertArrayEquals(text, Files.readAllBytes(out.resolve("text.txt")));
+        assertArrayEquals(Inputs.run(5000), Files.readAllBytes(out.resolve("run.bin")));
+    }
+
+    @Test
+    public void manifestEntriesWithOneNameDoNotOverwriteEachOther() throws IOException {
+        Path a = write("a/r1.json", "{\"a\": 1}".getBytes());
+        Path b = write("b/r1.json", "{\"b\": 2}".getBytes());
+        Path manifest = dir.resolve("manifest");
+        Files.write(manifest, List.of(a.toString(), b.toString()));
+        Path grin = dir.resolve("grin");
+        // absolute entries keep only their names, so the second collides
+        assertEquals(1, new GrinBatch(true, new GrinOptions()).run(manifest.toString(),
+                grin.toString()));
+        Path out = dir.resolve("out");
+        new GrinBatch(false, new GrinOptions()).run(grin.toString(), out.toString());
+        assertArrayEquals(Files.readAllBytes(a), Files.readAllBytes(out.resolve("r1.json")));
+    }
+}
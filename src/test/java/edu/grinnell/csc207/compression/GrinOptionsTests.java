@@ -0,0 +1,47 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class GrinOptionsTests {
+    private static GrinOptions parse(String... args) {
+        GrinOptions options = new GrinOptions();
+        options.parse(args);
+        return options;
+    }
+
+    @Test
+    public void sizesTakeUnits() {
+        assertEquals(64 << 10, parse("--block-size=64K").getBlockSize());
+        assertEquals(1 << 30, parse("--block-size=1G").getBlockSize());
+        assertEquals(3L << 30, parse("--sample=3G").getSampleSize());
+    }
+
+    @Test
+    public void sizesPastAnIntAreRejected() {
+        String[] args = {"--block-size=2G", "--block-size=4G", "--block-size=5G",
+            "--threads=4294967297", "--lz=4294967297"};
+        for (String arg : args) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> parse(arg));
+            assertEquals("Number out of range: " + arg, e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> parse("--sample=9999999999G"));
+    }
+
+    @Test
+    public void codeLengthLimitsMustFitTheAlphabet() {
+        assertEquals(0, parse("--max-code-length=0").getMaxCodeLength());
+        assertEquals(9, parse("--max-code-length=9").getMaxCodeLength());
+        assertEquals(32, parse("--max-code-length=32").getMaxCodeLength());
+        for (String arg : new String[] {"--max-code-length=-1", "--max-code-length=8",
+            "--max-code-length=33", "--max-code-length=64"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> parse(arg));
+            assertEquals("Max code length must be 0 or 9 to 32", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GrinStreamTests {
+    /** Records the phases and files it is told about */
+    private static class Recorder implements GrinListener {
+        private final List<String> phases = new ArrayList<>();
+        private final List<long[]> files = new ArrayList<>();
+
+        @Override
+        public synchronized void phase(String name, long nanos) {
+            phases.add(name);
+        }
+
+        @Override
+        public void tree(int symbols, int depth) {
+        }
+
+        @Override
+        public synchronized void file(long rawBytes, long grinBytes) {
+            files.add(new long[] {rawBytes, grinBytes});
+        }
+
+        @Override
+        public void cost(String name, long bits, long optimalBits) {
+        }
+
+        @Override
+        public void stored(String file) {
+        }
+    }
+
+    private static byte[] compress(byte[] data, GrinOptions options) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GrinOutputStream out = new GrinOutputStream(bytes, options)) {
+            // odd-sized writes, so blocks fill in the middle of a write
+            for (int off = 0; off < data.length; off += 1000) {
+                out.write(data, off, Math.min(1000, data.length - off));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] file) throws IOException {
+        try (GrinInputStream in = new GrinInputStream(new ByteArrayInputStream(file), 2)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void streamsRoundTrip() throws IOException {
+        GrinOptions options = new GrinOptions();
+        options.setBlockSize(4096);
+        for (Map.Entry<String, byte[]> input : Inputs.all().entrySet()) {
+            byte[] data = input.getValue();
+            assertArrayEquals(data, decompress(compress(data, options)), input.getKey());
+        }
+    }
+
+    @Test
+    public void singleStreamFilesAreDecoded() throws IOException {
+        byte[] file = Files.readAllBytes(Path.of("files", "huffman-example.grin"));
+        byte[] text = Files.readAllBytes(Path.of("files", "huffman-example.txt"));
+        assertArrayEquals(text, decompress(file));
+    }
+
+    @Test
+    public void truncatedSingleStreamFilesAreRejected(@TempDir Path dir) throws IOException {
+        byte[] file = Files.readAllBytes(Path.of("files", "pg2600.grin"));
+        Path cut = dir.resolve("cut.grin");
+        Path out = dir.resolve("cut.out");
+        for (int len : new int[] {2000, 100_000, file.length - 1}) {
+            byte[] truncated = Arrays.copyOf(file, len);
+            // past the end the table decoder would see zero bits forever
+            assertThrows(IllegalArgumentException.class, () -> decompress(truncated));
+            Files.write(cut, truncated);
+            assertThrows(IllegalArgumentException.class,
+                    () -> Grin.decode(cut.toString(), out.toString()));
+        }
+    }
+
+    @Test
+    public void canonicalSingleStreamsStaySmall(@TempDir Path dir) throws IOException {
+        Path in = dir.resolve("small.txt");
+        Files.write(in, Arrays.copyOf(Inputs.text(), 3000));
+        Path plain = dir.resolve("plain.grin");
+        Path canonical = dir.resolve("canonical.grin");
+        Path blocks = dir.resolve("blocks.grin");
+        GrinOptions options = new GrinOptions();
+        Grin.encode(in.toString(), plain.toString(), options);
+        options.setCanonical(true);
+        Grin.encode(in.toString(), canonical.toString(), options);
+        options.setBlockSize(GrinOptions.DEFAULT_BLOCK_SIZE);
+        Grin.encode(in.toString(), blocks.toString(), options);
+
+        byte[] file = Files.readAllBytes(canonical);
+        assertEquals(BlockFormat.CANONICAL_MAGIC, ByteBuffer.wrap(file).getInt());
+        // code lengths are smaller than the tree, and there is no container
+        assertTrue(file.length < Files.size(plain));
+        assertTrue(file.length < Files.size(blocks));
+        assertArrayEquals(Files.readAllBytes(in), decompress(file));
+        Path out = dir.resolve("small.out");
+        Grin.decode(canonical.toString(), out.toString());
+        assertArrayEquals(Files.readAllBytes(in), Files.readAllBytes(out));
+    }
+
+    @Test
+    public void otherStreamsAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> decompress("hello, world".getBytes()));
+        assertEquals("Input file must be a Grin file", e.getMessage());
+    }
+
+    @Test
+    public void closedOutputStreamsRefuseWrites() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GrinOutputStream out = new GrinOutputStream(bytes);
+        out.write('a');
+        out.close();
+        int size = bytes.size();
+        out.close();
+        assertEquals(size, bytes.size());
+        assertEquals("Stream closed", assertThrows(IOException.class,
+                () -> out.write('b')).getMessage());
+        assertThrows(IOException.class, () -> out.write(new byte[4], 0, 4));
+        assertThrows(IOException.class, out::flush);
+        assertArrayEquals(new byte[] {'a'}, decompress(bytes.toByteArray()));
+    }
+
+    @Test
+    public void pipesAreReportedLikeFiles() throws IOException {
+        byte[] text = Inputs.text();
+        GrinOptions options = new GrinOptions();
+        options.setBlockSize(4096);
+        options.setThreads(2);
+        Recorder encoded = new Recorder();
+        options.setListener(encoded);
+        ByteArrayOutputStream grin = new ByteArrayOutputStream();
+        Grin.encode(new ByteArrayInputStream(text), grin, options);
+        assertEquals(1, encoded.files.size());
+        assertArrayEquals(new long[] {text.length, grin.size()}, encoded.files.get(0));
+
+        Recorder decoded = new Recorder();
+        options.setListener(decoded);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        Grin.decode(new ByteArrayInputStream(grin.toByteArray()), raw, options);
+        assertArrayEquals(text, raw.toByteArray());
+        assertArrayEquals(new long[] {text.length, grin.size()}, decoded.files.get(0));
+        // every block reports its header and codes, as encoding does
+        int blocks = (text.length + 4095) / 4096;
+        assertEquals(blocks, decoded.phases.stream().filter("header"::equals).count());
+        assertEquals(blocks, decoded.phases.stream().filter("codes"::equals).count());
+        assertEquals("total", decoded.phases.get(decoded.phases.size() - 1));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HistogramTests {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void smallSamplesSeeTheWholeFile() throws IOException {
+        // a different byte fills each eighth of the file
+        byte[] data = new byte[800_000];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(data, i * 100_000, (i + 1) * 100_000, (byte) ('a' + i));
+        }
+        Path file = dir.resolve("eighths");
+        Files.write(file, data);
+        Histogram sample = Histogram.sample(file.toString(), 1000);
+        assertTrue(sample.total() <= 1000 + 256, "total " + sample.total());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(sample.count('a' + i) > 100, (char) ('a' + i) + " " + sample.count('a' + i));
+        }
+    }
+
+    @Test
+    public void parallelCountsMatchSequentialCounts() throws IOException {
+        // odd sizes, so ranges end inside chunks and not on their edges
+        byte[] data = Inputs.skewed(1_000_003, 7);
+        Path file = dir.resolve("skewed");
+        Files.write(file, data);
+        Histogram sequential = Histogram.of(file.toString());
+        for (long threshold : new long[] {4096, 10_007, 300_000, data.length}) {
+            // a 10_007 byte threshold splits the file into 64 ranges
+            Histogram parallel = Histogram.ofParallel(file.toString(), threshold);
+            assertArrayEquals(sequential.toArray(), parallel.toArray(), "threshold " + threshold);
+        }
+        assertArrayEquals(sequential.toArray(), Histogram.ofParallel(file.toString()).toArray());
+    }
+
+    @Test
+    public void smallFilesAreCountedExactly() throws IOException {
+        byte[] text = Inputs.text();
+        Path file = dir.resolve("text");
+        Files.write(file, text);
+        Histogram exact = new Histogram();
+        exact.add(text, 0, text.length);
+        Histogram sample = Histogram.sample(file.toString(), text.length);
+        for (int i = 0; i < 256; i++) {
+            assertEquals(exact.count(i), sample.count(i));
+        }
+    }
+
+    @Test
+    public void sampledFilesThatDoNotShrinkAreStored() throws IOException {
+        // the head is one byte over and over, the rest is random
+        byte[] data = Inputs.random(300_000, 7);
+        Arrays.fill(data, 0, 1000, (byte) 'x');
+        Path file = dir.resolve("mixed");
+        Files.write(file, data);
+        GrinOptions options = new GrinOptions();
+        options.setSampleSize(1000);
+        GrinStats stats = new GrinStats();
+        options.setListener(stats);
+        Path grin = dir.resolve("mixed.grin");
+        Grin.encode(file.toString(), grin.toString(), options);
+        assertEquals(List.of(file.toString()), stats.getStoredFiles());
+        assertEquals(BlockFormat.BLOCK_MAGIC, ByteBuffer.wrap(Files.readAllBytes(grin)).getInt());
+        assertTrue(Files.size(grin) <= BlockFormat.storedSize(data.length,
+                GrinOptions.DEFAULT_BLOCK_SIZE));
+        Path out = dir.resolve("mixed.out");
+        Grin.decode(grin.toString(), out.toString());
+        assertArrayEquals(data, Files.readAllBytes(out));
+    }
+}
@@ -0,0 +1,138 @@
+package edu.grinnell.csc207.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The inputs the tests code, and helpers that run them through a block
+ * container in memory.
+ */
+final class Inputs {
+    /**
+     * Prevents instantiation
+     */
+    private Inputs() {
+    }
+
+    /**
+     * @return the named inputs: empty, one byte, every byte value once, a
+     *         long run, random bytes, geometrically skewed bytes and English
+     *         text
+     */
+    static Map<String, byte[]> all() {
+        Map<String, byte[]> inputs = new LinkedHashMap<>();
+        inputs.put("empty", new byte[0]);
+        inputs.put("one", new byte[] {42});
+        inputs.put("all256", allBytes());
+        inputs.put("run", run(100_000));
+        inputs.put("random", random(50_000, 1));
+        inputs.put("skewed", skewed(50_000, 2));
+        inputs.put("text", text());
+        return inputs;
+    }
+
+    /**
+     * @return the bytes 0 through 255 in order
+     */
+    static byte[] allBytes() {
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * @param n the length of the run
+     * @return a few bytes, n copies of one byte, and a few bytes more
+     */
+    static byte[] run(int n) {
+        byte[] data = new byte[n + 6];
+        System.arraycopy("head".getBytes(), 0, data, 0, 4);
+        for (int i = 4; i < n + 4; i++) {
+            data[i] = 'x';
+        }
+        data[n + 4] = 'y';
+        data[n + 5] = 'z';
+        return data;
+    }
+
+    /**
+     * @param n    the number of bytes
+     * @param seed the random seed
+     * @return n uniformly random bytes
+     */
+    static byte[] random(int n, long seed) {
+        byte[] data = new byte[n];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * @param n    the number of bytes
+     * @param seed the random seed
+     * @return n bytes, each value half as likely as the one before it
+     */
+    static byte[] skewed(int n, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = (byte) Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE);
+        }
+        return data;
+    }
+
+    /**
+     * @return the English text of files/wikipedia-huffman-coding.txt
+     */
+    static byte[] text() {
+        try {
+            return Files.readAllBytes(Paths.get("files", "wikipedia-huffman-coding.txt"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param data    the bytes to encode
+     * @param options the options that choose the block size and coding
+     * @return data as a block container
+     */
+    static byte[] writeBlocks(byte[] data, GrinOptions options) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BlockWriter writer = new BlockWriter(new BitOutputStream(bytes), options);
+        try {
+            writer.writeAll(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param file    a block container
+     * @param threads the number of threads that decode blocks
+     * @return the decoded bytes
+     */
+    static byte[] readBlocks(byte[] file, int threads) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BlockReader reader = new BlockReader(new BitInputStream(ByteBuffer.wrap(file)), threads);
+        BitOutputStream out = new BitOutputStream(bytes);
+        try {
+            reader.readAll(out);
+        } finally {
+            reader.close();
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
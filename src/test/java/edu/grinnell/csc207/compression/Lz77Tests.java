@@ -0,0 +1,149 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class Lz77Tests {
+    /** The codes and matches of one input, encoded */
+    private static class Coded {
+        private final HuffmanTree literals;
+        private final HuffmanTree distances;
+        private final long[] literalCounts;
+        private final long[] distanceCounts;
+        private final byte[] codes;
+
+        Coded(byte[] data, int level) {
+            Lz77 matches = new Lz77(data, 0, data.length, level);
+            literalCounts = matches.countLiterals();
+            distanceCounts = matches.countDistances();
+            literals = HuffmanTree.ofSymbols(literalCounts, 0);
+            distances = HuffmanTree.ofSymbols(distanceCounts, 0);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BitOutputStream out = new BitOutputStream(bytes);
+            matches.encode(literals, distances, out);
+            out.close();
+            codes = bytes.toByteArray();
+        }
+
+        byte[] decode(int len) {
+            byte[] dst = new byte[len];
+            Lz77.decode(literals, distances, new BitInputStream(ByteBuffer.wrap(codes)), dst,
+                    0, len);
+            return dst;
+        }
+    }
+
+    @Example
+    void everyLevelRoundTripsEveryInput() {
+        for (int level = 1; level <= 9; level++) {
+            for (Map.Entry<String, byte[]> input : Inputs.all().entrySet()) {
+                byte[] data = input.getValue();
+                assertArrayEquals(data, new Coded(data, level).decode(data.length),
+                        "level " + level + " " + input.getKey());
+            }
+        }
+    }
+
+    @Example
+    void higherLevelsFindMoreOfTheText() {
+        byte[] text = Inputs.text();
+        assertTrue(new Coded(text, 9).codes.length <= new Coded(text, 1).codes.length);
+    }
+
+    @Example
+    void overlappingMatchesRoundTrip() {
+        // each period repeats from the copy just before it, so every match
+        // is longer than its distance
+        for (int period = 1; period <= 5; period++) {
+            byte[] data = new byte[5000];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + i % period);
+            }
+            for (int level = 1; level <= 9; level++) {
+                Coded coded = new Coded(data, level);
+                // the distance is the period, and the length the longest
+                assertTrue(coded.distanceCounts[Lz77.bucket(period - 1)] > 0);
+                assertTrue(coded.literalCounts[Lz77.FIRST_LENGTH
+                        + Lz77.bucket(Lz77.MAX_MATCH - Lz77.MIN_MATCH)] > 0);
+                assertArrayEquals(data, coded.decode(data.length), "period " + period);
+            }
+        }
+    }
+
+    /**
+     * @param distance how far back the repeated string is
+     * @return a random string, filler, and the string again, distance
+     *         bytes after the first
+     */
+    private static byte[] repeatedAt(int distance) {
+        byte[] string = Inputs.random(300, 5);
+        for (int i = 0; i < string.length; i++) {
+            // the filler is all zeros, so no three bytes of it look alike
+            string[i] |= 1;
+        }
+        byte[] data = new byte[distance + string.length];
+        System.arraycopy(string, 0, data, 0, string.length);
+        System.arraycopy(string, 0, data, distance, string.length);
+        return data;
+    }
+
+    @Example
+    void matchesReachTheWholeWindow() {
+        int farthest = Lz77.DISTANCE_SYMBOLS - 1;
+        for (int level = 1; level <= 9; level++) {
+            byte[] data = repeatedAt(Lz77.WINDOW);
+            Coded coded = new Coded(data, level);
+            assertEquals(Lz77.WINDOW - 1, Lz77.base(farthest)
+                    + (1 << Lz77.extraBits(farthest)) - 1);
+            assertTrue(coded.distanceCounts[farthest] > 0, "level " + level);
+            assertArrayEquals(data, coded.decode(data.length));
+
+            data = repeatedAt(Lz77.WINDOW + 1);
+            coded = new Coded(data, level);
+            assertEquals(0, coded.distanceCounts[farthest], "level " + level);
+            assertArrayEquals(data, coded.decode(data.length));
+        }
+    }
+
+    @Property
+    void bytesRoundTrip(@ForAll @Size(max = 3000) byte[] data,
+            @ForAll @IntRange(min = 1, max = 9) int level) {
+        // a small alphabet makes many short and overlapping matches
+        for (int i = 0; i < data.length; i++) {
+            data[i] &= 3;
+        }
+        assertArrayEquals(data, new Coded(data, level).decode(data.length));
+    }
+
+    @Example
+    void matchesOutsideTheBlockAreRejected() {
+        byte[] data = new byte[1000];
+        Arrays.fill(data, (byte) 'x');
+        Coded coded = new Coded(data, 6);
+        // the run is one byte and then a match of the rest
+        assertThrows(IllegalArgumentException.class, () -> coded.decode(500));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        // a match of MIN_MATCH bytes at distance 1, with nothing before it
+        coded.literals.writeCode(out, Lz77.FIRST_LENGTH);
+        coded.distances.writeCode(out, 0);
+        out.close();
+        assertThrows(IllegalArgumentException.class, () -> Lz77.decode(coded.literals,
+                coded.distances, new BitInputStream(ByteBuffer.wrap(bytes.toByteArray())),
+                new byte[10], 0, 10));
+    }
+}
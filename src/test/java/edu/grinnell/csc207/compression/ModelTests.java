@@ -0,0 +1,87 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModelTests {
+    @TempDir
+    Path dir;
+
+    private static GrinModel trainOnText() {
+        Histogram sample = new Histogram();
+        byte[] text = Inputs.text();
+        sample.add(text, 0, text.length);
+        return GrinModel.train(sample, 0);
+    }
+
+    @Test
+    public void recordsRoundTrip() {
+        GrinModel model = trainOnText();
+        byte[] text = Inputs.text();
+        for (int len : new int[] {0, 1, 87, 1000}) {
+            byte[] record = model.encode(text, 100, len);
+            assertEquals(model.getId(), GrinModel.idOf(record));
+            assertArrayEquals(Arrays.copyOfRange(text, 100, 100 + len), model.decode(record));
+        }
+        // bytes the sample never had still have codes
+        byte[] all = Inputs.allBytes();
+        assertArrayEquals(all, model.decode(model.encode(all, 0, all.length)));
+    }
+
+    @Test
+    public void lengthsPastTheInputAreRejected() {
+        GrinModel model = trainOnText();
+        byte[] record = model.encode(Inputs.text(), 0, 100);
+        // the same header, but a length of nearly 2 GB in front of the codes
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        out.writeBits(BlockFormat.MODEL_REF_MAGIC, 32);
+        out.writeBits(model.getId(), 32);
+        out.writeBits(0, 30);
+        out.writeBits(1, 1);
+        out.writeBits((1 << 30) - 8, 30);
+        for (int i = 8; i < record.length; i++) {
+            out.writeBits(record[i] & 0xff, 8);
+        }
+        out.close();
+        assertThrows(IllegalArgumentException.class, () -> model.decode(bytes.toByteArray()));
+        assertThrows(IllegalArgumentException.class,
+                () -> model.decode(Arrays.copyOf(record, record.length - 2)));
+    }
+
+    @Test
+    public void filesAreParsedOnce() throws IOException {
+        GrinModel model = trainOnText();
+        Path file = dir.resolve("text.model");
+        model.write(file.toString());
+        ModelCache cache = new ModelCache(null, 4);
+        GrinModel loaded = cache.load(file.toString());
+        assertEquals(model.getId(), loaded.getId());
+        assertSame(loaded, cache.load(file.toString()));
+        assertSame(loaded, cache.load(dir.resolve("x/../text.model").toString()));
+        assertSame(loaded, cache.get(model.getId()));
+    }
+
+    @Test
+    public void modelsAreFoundByIdInTheDirectory() throws IOException {
+        GrinModel model = trainOnText();
+        new ModelCache(dir.toString(), 4).put(model);
+        assertTrue(Files.exists(dir.resolve(ModelCache.modelFile(model.getId()))));
+        ModelCache cache = new ModelCache(dir.toString(), 4);
+        byte[] record = model.encode(Inputs.text(), 0, 300);
+        assertArrayEquals(Arrays.copyOf(Inputs.text(), 300), cache.decode(record));
+        assertThrows(IllegalArgumentException.class, () -> cache.get(model.getId() + 1));
+    }
+}
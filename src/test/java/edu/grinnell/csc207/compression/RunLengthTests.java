@@ -0,0 +1,122 @@
+package edu.grinnell.csc207.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.IntRange;
+import net.jqwik.api.constraints.Size;
+
+public class RunLengthTests {
+    private static byte[] encode(HuffmanTree tree, byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        RunLength.encode(tree, data, 0, data.length, out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decode(HuffmanTree tree, byte[] codes, int len) {
+        byte[] dst = new byte[len];
+        RunLength.decode(tree, new BitInputStream(ByteBuffer.wrap(codes)), dst, 0, len);
+        return dst;
+    }
+
+    private static byte[] roundTrip(byte[] data) {
+        HuffmanTree tree = HuffmanTree.ofSymbols(RunLength.count(data, 0, data.length), 0);
+        return decode(tree, encode(tree, data), data.length);
+    }
+
+    @Example
+    void runsAtEveryLengthClassBoundaryRoundTrip() {
+        // a run of r copies after the first byte has run symbol k - 1 past
+        // FIRST_RUN, where 2^k <= r < 2^(k+1)
+        for (int k = 1; k <= 20; k++) {
+            for (int repeat : new int[] {(1 << k) - 1, 1 << k, (1 << k) + 1}) {
+                byte[] data = Inputs.run(repeat + 1);
+                long[] counts = RunLength.count(data, 0, data.length);
+                if (repeat >= 2) {
+                    int log = 31 - Integer.numberOfLeadingZeros(repeat);
+                    assertEquals(1, counts[RunLength.FIRST_RUN + log - 1], "repeat " + repeat);
+                }
+                assertArrayEquals(data, roundTrip(data), "repeat " + repeat);
+            }
+        }
+    }
+
+    @Example
+    void shortRepeatsAreCodedAsBytes() {
+        for (int copies = 1; copies <= 3; copies++) {
+            byte[] data = Inputs.run(copies);
+            long[] counts = RunLength.count(data, 0, data.length);
+            long runs = Arrays.stream(counts, RunLength.FIRST_RUN, counts.length).sum();
+            assertEquals(copies == 3 ? 1 : 0, runs, copies + " copies");
+            assertArrayEquals(data, roundTrip(data));
+        }
+    }
+
+    @Example
+    void theAlphabetFitsTheBlockFormat() {
+        assertEquals(BlockFormat.MAX_SYMBOLS, RunLength.FIRST_RUN + RunLength.RUN_SYMBOLS);
+        assertThrows(IllegalArgumentException.class,
+                () -> HuffmanTree.ofSymbols(new long[BlockFormat.MAX_SYMBOLS + 1], 0));
+    }
+
+    @Property
+    void bytesRoundTrip(@ForAll @Size(max = 2000) byte[] data,
+            @ForAll @IntRange(min = 0, max = 3) int shift) {
+        // fewer distinct values make longer runs
+        for (int i = 0; i < data.length; i++) {
+            data[i] >>= 5 + shift;
+        }
+        assertArrayEquals(data, roundTrip(data));
+    }
+
+    @Example
+    void runsPastTheBlockAreRejected() {
+        byte[] data = Inputs.run(1000);
+        HuffmanTree tree = HuffmanTree.ofSymbols(RunLength.count(data, 0, data.length), 0);
+        byte[] codes = encode(tree, data);
+        assertThrows(IllegalArgumentException.class, () -> decode(tree, codes, 500));
+    }
+
+    @Example
+    void runsWithNoByteBeforeThemAreRejected() {
+        long[] counts = RunLength.count(Inputs.run(100), 0, 106);
+        HuffmanTree tree = HuffmanTree.ofSymbols(counts, 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        // 99 copies is a run symbol with k = 6
+        tree.writeCode(out, RunLength.FIRST_RUN + 5);
+        out.writeBits(99, 6);
+        out.close();
+        assertThrows(IllegalArgumentException.class,
+                () -> decode(tree, bytes.toByteArray(), 100));
+    }
+
+    @Example
+    void plainBlocksRejectSymbolsPastTheBytes() {
+        byte[] data = Inputs.run(1000);
+        HuffmanTree tree = HuffmanTree.ofSymbols(RunLength.count(data, 0, data.length), 0);
+        byte[] codes = encode(tree, data);
+        // run symbols are not bytes to a block decoded without RunLength
+        assertThrows(IllegalArgumentException.class, () -> tree.decodeBytes(
+                new BitInputStream(ByteBuffer.wrap(codes)), new byte[data.length], 0,
+                data.length));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream out = new BitOutputStream(bytes);
+        tree.writeCode(out, 'h');
+        tree.writeCode(out, 256);
+        out.close();
+        assertThrows(IllegalArgumentException.class, () -> tree.decodeBytes(
+                new BitInputStream(ByteBuffer.wrap(bytes.toByteArray())), new byte[2], 0, 2));
+    }
+}
@@ -1,5 +0,0 @@
-package edu.grinnell.csc207.compression;
-
-public class Tests {
-    // TODO: fill in with your unit tests!
-}